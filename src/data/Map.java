@@ -1,12 +1,14 @@
 package data;
 import java.io.*;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import logic.PacManLauncher;
 import logic.Pacman;
 import logic.BeliefState;
+import logic.BreadthFirstSearch;
+import logic.MapContext;
 import view.*;
 
 
@@ -40,12 +42,28 @@ public class Map {
 	private int nbrGomme;
 	/** La position sur la map de chaque fantôme en début de niveau : Un liste de couple (x,y) */
 	private ArrayList<int[]> ghosts;
-	/** Paires cases visibles */
-	private HashSet<String> visible;
+	/** Le segment de ligne de chaque case (ligne * nbCases + colonne) : deux cases de la même ligne se voient si elles sont dans le même segment, -1 pour un mur */
+	private int[] rowSegments;
+	/** Le segment de colonne de chaque case : deux cases de la même colonne se voient si elles sont dans le même segment, -1 pour un mur */
+	private int[] columnSegments;
+	/** Le nombre de segments (de ligne et de colonne) déjà créés */
+	private int nbrSegments;
 	private PacManLauncher pml;
 	private BeliefState state;
 	private ArrayList<BeliefState> visibleBeliefState;
 	private ArrayList<int[]> gamePositions;
+	/** L'indice de chaque case dans la table des distances, case par case (ligne * nbCases + colonne), -1 pour un mur */
+	private int[] cellIndex;
+	/** La distance dans le labyrinthe entre chaque paire de cases praticables (indices a et b) : distances[a * gamePositions.size() + b], Short.MAX_VALUE si b n'est pas accessible depuis a */
+	private short[] distances;
+	/** Les directions des tables de déplacement, dans l'ordre de leur indice (le même que celui des positions de BeliefState) */
+	public static final String DIRECTIONS = "DLRU";
+	/** La case voisine de chaque case dans chaque direction : neighbours[case * 4 + direction], -1 pour un mur ou le bord de la map (case = ligne * nbCases + colonne) */
+	private int[] neighbours;
+	/** Les déplacements d'un fantôme qui erre depuis chaque case et chaque direction suivie : ghostMoves[case * 4 + direction] contient les cases d'arrivée * 4 + direction du déplacement */
+	private int[][] ghostMoves;
+	/** La description du niveau partagée par tous les BeliefStates de la partie */
+	private MapContext context;
 
 	/**
 	 * Constructeur de la classe Map, il creer un niveau du jeu a partir d'un fichier
@@ -85,6 +103,7 @@ public class Map {
 	 * @post couleurMur == "blue" || couleurMur == "green" || couleurMur == "pink"
 	 */
 	private void createMap(){
+		char[][] cases = null;           // Le contenu de chaque case, lu dans le fichier
 		try{
 			// Ouverture du fichier pour la lecture
 			InputStream ips=new FileInputStream(this.mapFile);
@@ -106,8 +125,11 @@ public class Map {
 					this.tailleCase = this.WIDTH / this.nbCases;
 					this.couleurMur = param[1];
 					this.theMap = new MapGenerate(this.nbCases);
-					this.visible = new HashSet<String>();
-					this.state = new BeliefState(this.nbCases, this.pml.getPacman() != null? this.pml.getPacman().getScore(): 0, this.pml.getPacman() != null? this.pml.getPacman().getLife(): Pacman.LIFE_START);
+					this.rowSegments = new int[this.nbCases * this.nbCases];
+					this.columnSegments = new int[this.nbCases * this.nbCases];
+					Arrays.fill(this.rowSegments, -1);
+					Arrays.fill(this.columnSegments, -1);
+					cases = new char[this.nbCases][this.nbCases];
 				}
 				else {
 					int j = 0;                   // La colonne de la map
@@ -127,38 +149,20 @@ public class Map {
 						case "." :
 							this.theMap.setFigure(i,j,new Gomme(this.tailleCase, tmpx, tmpy, false));
 							this.nbrGomme += 1;
-							this.visible.add(i+","+j+";"+i+","+j);
-							for(int k = i - 1; k > -1 && this.visible.contains(k+","+j+";"+(i-1)+","+j); k--) {
-								this.visible.add(k+","+j+";"+i+","+j);
-							}
-							for(int k = j - 1; k > -1 && this.visible.contains(i+","+k+";"+i+","+(j-1)); k--) {
-								this.visible.add(i+","+k+";"+i+","+j);
-							}
+							this.addSegments(i, j);
 							int [] pos1 = {i,j};
 							this.gamePositions.add(pos1);
 							break;
 						case "*" :
 							this.theMap.setFigure(i,j,new Gomme(this.tailleCase, tmpx, tmpy, true));
 							this.nbrGomme += 1;
-							this.visible.add(i+","+j+";"+i+","+j);
-							for(int k = i - 1; k > -1 && this.visible.contains(k+","+j+";"+(i-1)+","+j); k--) {
-								this.visible.add(k+","+j+";"+i+","+j);
-							}
-							for(int k = j - 1; k > -1 && this.visible.contains(i+","+k+";"+i+","+(j-1)); k--) {
-								this.visible.add(i+","+k+";"+i+","+j);
-							}
+							this.addSegments(i, j);
 							int [] pos2 = {i,j};
 							this.gamePositions.add(pos2);
 							break;
 						case "O" :
 							this.theMap.setFigure(i,j,new Gomme(this.tailleCase, tmpx, tmpy));
-							this.visible.add(i+","+j+";"+i+","+j);
-							for(int k = i - 1; k > -1 && this.visible.contains(k+","+j+";"+(i-1)+","+j); k--) {
-								this.visible.add(k+","+j+";"+i+","+j);
-							}
-							for(int k = j - 1; k > -1 && this.visible.contains(i+","+k+";"+i+","+(j-1)); k--) {
-								this.visible.add(i+","+k+";"+i+","+j);
-							}
+							this.addSegments(i, j);
 							int [] pos3 = {i,j};
 							this.gamePositions.add(pos3);
 							break;
@@ -166,13 +170,7 @@ public class Map {
 							this.theMap.setFigure(i,j,new Gomme(this.tailleCase, tmpx, tmpy));
 							this.pacmanX = tmpx;
 							this.pacmanY = tmpy;
-							this.visible.add(i+","+j+";"+i+","+j);
-							for(int k = i - 1; k > -1 && this.visible.contains(k+","+j+";"+(i-1)+","+j); k--) {
-								this.visible.add(k+","+j+";"+i+","+j);
-							}
-							for(int k = j - 1; k > -1 && this.visible.contains(i+","+k+";"+i+","+(j-1)); k--) {
-								this.visible.add(i+","+k+";"+i+","+j);
-							}
+							this.addSegments(i, j);
 							int [] pos4 = {i,j};
 							this.gamePositions.add(pos4);
 							break;
@@ -182,18 +180,12 @@ public class Map {
 							posGhost[0] = tmpx;
 							posGhost[1] = tmpy;
 							this.ghosts.add(posGhost);
-							this.visible.add(i+","+j+";"+i+","+j);
-							for(int k = i - 1; k > -1 && this.visible.contains(k+","+j+";"+(i-1)+","+j); k--) {
-								this.visible.add(k+","+j+";"+i+","+j);
-							}
-							for(int k = j - 1; k > -1 && this.visible.contains(i+","+k+";"+i+","+(j-1)); k--) {
-								this.visible.add(i+","+k+";"+i+","+j);
-							}
+							this.addSegments(i, j);
 							int [] pos5 = {i,j};
 							this.gamePositions.add(pos5);
 							break;
 						}
-						this.state.modifyMap(i, j, str.charAt(0));
+						cases[i][j] = str.charAt(0);
 						j++;
 					}
 					i++;
@@ -210,10 +202,121 @@ public class Map {
 		assert couleurMur == "blue" || couleurMur == "green" || couleurMur == "pink" : "Post condition non respectée : Mauvaise couleur de mur";
 
 		this.invariant();
-		BeliefState.setStaticVariables(this.gamePositions, this.visible, this.pacmanX, this.pacmanY, this.ghosts, this.tailleCase, this.nbCases);
+		this.computeNeighbours();
+		this.computeDistances();
+		this.computeMoves();
+		this.context = new MapContext(this.gamePositions, this.rowSegments, this.columnSegments, this.pacmanX, this.pacmanY, this.ghosts, this.tailleCase, this.nbCases, this.cellIndex, this.distances, this.neighbours, this.ghostMoves);
+		//L'état initial est rempli une fois le contexte du niveau construit, dans l'ordre de lecture du fichier
+		this.state = new BeliefState(this.context, this.pml.getPacman() != null? this.pml.getPacman().getScore(): 0, this.pml.getPacman() != null? this.pml.getPacman().getLife(): Pacman.LIFE_START);
+		for (int row = 0; row < this.nbCases; row++) {
+			for (int column = 0; column < this.nbCases; column++) {
+				if (cases[row][column] != 0) {
+					this.state.modifyMap(row, column, cases[row][column]);
+				}
+			}
+		}
 		this.visibleBeliefState.add(new BeliefState(this.state, false));
 	}
 	
+	/**
+	 * Ajoute une case praticable aux segments de ligne et de colonne : elle prolonge le segment de la case à sa gauche (et de la case au-dessus),
+	 * ou commence un nouveau segment si cette case est un mur
+	 *
+	 * @param i la ligne de la case
+	 * @param j la colonne de la case
+	 */
+	private void addSegments(int i, int j) {
+		int cell = i * this.nbCases + j;
+		this.rowSegments[cell] = j > 0 && this.rowSegments[cell - 1] != -1 ? this.rowSegments[cell - 1] : this.nbrSegments++;
+		this.columnSegments[cell] = i > 0 && this.columnSegments[cell - this.nbCases] != -1 ? this.columnSegments[cell - this.nbCases] : this.nbrSegments++;
+	}
+
+	/**
+	 * Numérote les cases praticables dans l'ordre de lecture de la map, puis calcule les cases voisines de chaque case dans chaque direction
+	 */
+	private void computeNeighbours() {
+		int nbrCells = this.nbCases * this.nbCases;
+		this.cellIndex = new int[nbrCells];
+		Arrays.fill(this.cellIndex, -1);
+		for (int a = 0; a < this.gamePositions.size(); a++) {
+			int[] pos = this.gamePositions.get(a);
+			this.cellIndex[pos[0] * this.nbCases + pos[1]] = a;
+		}
+		int[][] voisins = {{1, 0}, {0, -1}, {0, 1}, {-1, 0}};//dans l'ordre de DIRECTIONS
+		this.neighbours = new int[nbrCells * 4];
+		for (int cell = 0; cell < nbrCells; cell++) {
+			for (int d = 0; d < 4; d++) {
+				int i = cell / this.nbCases + voisins[d][0];
+				int j = cell % this.nbCases + voisins[d][1];
+				boolean libre = i >= 0 && i < this.nbCases && j >= 0 && j < this.nbCases && this.cellIndex[i * this.nbCases + j] != -1;
+				this.neighbours[cell * 4 + d] = libre ? i * this.nbCases + j : -1;
+			}
+		}
+	}
+
+	/**
+	 * Calcule la distance dans le labyrinthe entre toutes les paires de cases praticables, par un parcours en largeur depuis chacune d'elles
+	 */
+	private void computeDistances() {
+		int nbrCells = this.gamePositions.size();
+		this.distances = new short[nbrCells * nbrCells];
+		Arrays.fill(this.distances, Short.MAX_VALUE);
+		BreadthFirstSearch search = new BreadthFirstSearch(this.nbCases * this.nbCases, this.neighbours);
+		for (int a = 0; a < nbrCells; a++) {
+			int[] pos = this.gamePositions.get(a);
+			search.start();
+			search.addSource(pos[0] * this.nbCases + pos[1]);
+			for (int cell = search.next(); cell != -1; cell = search.next()) {
+				this.distances[a * nbrCells + this.cellIndex[cell]] = (short)search.distance(cell);
+			}
+		}
+	}
+
+	/**
+	 * Calcule les déplacements possibles d'un fantôme depuis chaque case et chaque direction :
+	 * un fantôme qui erre tourne à une intersection sans faire demi-tour, continue tout droit dans un couloir et ne fait demi-tour que dans un cul-de-sac
+	 */
+	private void computeMoves() {
+		int nbrCells = this.nbCases * this.nbCases;
+		String ordre = "UDLR";//ordre dans lequel les déplacements d'un fantôme sont envisagés
+		this.ghostMoves = new int[nbrCells * 4][];
+		for (int cell = 0; cell < nbrCells; cell++) {
+			for (int d = 0; d < 4; d++) {
+				char dir = DIRECTIONS.charAt(d);
+				boolean vertical = dir == 'U' || dir == 'D';
+				int tourne = 0, demiTour = -1, toutDroit = -1;
+				for (int m = 0; m < 4; m++) {
+					char move = ordre.charAt(m);
+					int next = this.neighbours[cell * 4 + DIRECTIONS.indexOf(move)];
+					if (next == -1) {
+						continue;
+					}
+					if (move == dir) {
+						toutDroit = m;
+					}
+					else if ((move == 'U' || move == 'D') == vertical) {
+						demiTour = m;
+					}
+					else {
+						tourne++;
+					}
+				}
+				ArrayList<Integer> moves = new ArrayList<Integer>();
+				for (int m = 0; m < 4; m++) {
+					int next = this.neighbours[cell * 4 + DIRECTIONS.indexOf(ordre.charAt(m))];
+					if (next == -1 || (tourne > 0 && m == demiTour) || (tourne == 0 && toutDroit != -1 && m != toutDroit)) {
+						continue;//demi-tour hors d'un cul-de-sac, ou virage impossible dans un couloir
+					}
+					moves.add(next * 4 + DIRECTIONS.indexOf(ordre.charAt(m)));
+				}
+				this.ghostMoves[cell * 4 + d] = new int[moves.size()];
+				for (int m = 0; m < moves.size(); m++) {
+					this.ghostMoves[cell * 4 + d][m] = moves.get(m);
+				}
+			}
+		}
+	}
+
 	public ArrayList<int[]> getGamePosition() {
 		return this.gamePositions;
 	}
@@ -297,19 +400,19 @@ public class Map {
 		assert this.WIDTH == Canvas.WIDTH : "Invariant violé : WIDTH a changé";
 	}
 	
+	/**
+	 * Indique si deux cases se voient : elles sont sur la même ligne ou la même colonne, sans mur entre elles
+	 *
+	 * @param row1 la ligne de la première case
+	 * @param column1 la colonne de la première case
+	 * @param row2 la ligne de la deuxième case
+	 * @param column2 la colonne de la deuxième case
+	 * @return true si les deux cases sont praticables et dans le même segment de ligne ou de colonne
+	 */
 	public boolean isVisible(int row1, int column1, int row2, int column2) {
-		//System.out.println("isVisible " + row1 + "," + column1 + ";" + row2 + "," + column2);
-		if(row1 == row2) {
-			//System.out.println("row " + row1 + " columns " + column1 + "," + column2);
-			return this.visible.contains(row1+","+Math.min(column1,column2)+";"+row2+","+Math.max(column1, column2));
-		}
-		if(column1 == column2) {
-			//System.out.println("column " + column1 + " rows " + row1 + "," + row2);
-			return this.visible.contains(Math.min(row1, row2)+","+column1+";"+Math.max(row1, row2)+","+column2);
-		}
-		return false;
+		return this.context.isVisible(row1, column1, row2, column2);
 	}
-	
+
 	public PacManLauncher getPml() {
 		return this.pml;
 	}
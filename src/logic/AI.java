@@ -1,191 +1,510 @@
 package logic;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import view.Gomme;
 
 /**
- * class used to represent plan. It will provide for a given set of results an action to perform in each result
+ * class implement the AI to choose the next move of the Pacman.
+ * Each game uses its own instance : the transposition table, the path of the Pacman, the search tree and the settings are not shared between games
  */
-class Plans{
+public class AI{
 
-	ArrayList<Result> results;
+	private long transpositionTableSize = 32; //Mémoire (en Mo) allouée à la table de transposition
+	private TranspositionTable transpositionTable = new TranspositionTable(transpositionTableSize << 20); //Une table de transposition, indexée par la clé de Zobrist des beliefState, qui va permettre de stocker le score des beliefState déjà rencontrés et la profondeur à laquelle il a été calculé (partagée par les threads de la recherche parallèle)
+	private int[] visits = new int[0]; //Le nombre de passages du pacman sur chaque case (ligne * taille + colonne) depuis le dernier changement de score
+	private int taille; //Le nombre de lignes (et de colonnes) de la map
+	private int currentScore=-1; //Le score actuel du pacman
+	private final static int deepthMax = 4; //Profondeur maximale de recherche
+	private final static int deepthMaxIterative = 20; //Profondeur maximale atteignable en approfondissement itératif
+	private long timeBudget = 0; //Budget de temps (en ms) accordé à chaque coup, 0 pour une recherche à profondeur fixe
+	private long deadline; //Instant (en ms) à partir duquel la recherche en cours doit s'arrêter
+	private volatile boolean timeOut; //Vrai si la recherche en cours a dépassé son budget de temps
+	private int parallelism = 1; //Nombre de threads utilisés pour évaluer les actions depuis la racine, 1 pour une recherche séquentielle
+	private boolean parallelOrSearch = false; //Si vrai, les beliefStates de chaque result de la racine sont eux aussi évalués en parallèle
+	private ForkJoinPool pool; //Le pool de threads de la recherche parallèle
+	private boolean pruning = false; //Si vrai, la recherche élague les noeuds de hasard (Star1/Star2) et les noeuds max (alpha-beta)
+	private final static double scoreMin = -2; //Score minimal d'un beliefState : 0 si le pacman est mort sur une feuille, -1 s'il est mort avant, -2 avec le malus de cycle d'un beliefState retrouvé dans la table de transposition
+	private int[] beliefStatesMax = new int[0]; //Nombre maximal de beliefStates explorés par result, selon la profondeur restante (0 pour tous les explorer)
+	private SearchTree searchTree = new SearchTree(2000); //Les beliefStates déjà étendus sous la racine, conservés d'un coup à l'autre
+	private String lastMove; //Le dernier coup choisi par la recherche, pour retrouver la nouvelle racine dans l'arbre
+	private boolean pondering = false; //Si vrai, un thread cherche le coup suivant pendant que le pacman se déplace
+	private Thread ponderer; //Le thread qui cherche le coup suivant, null s'il n'y en a pas
+	private volatile boolean ponderStopped; //Vrai quand findNextMove demande au thread d'arrêter sa recherche
+	private ArrayList<BeliefState> ponderedBeliefStates = new ArrayList<>(); //Les beliefStates possibles après le dernier coup, dont le meilleur coup a déjà été cherché
+	private ArrayList<String> ponderedMoves = new ArrayList<>(); //Le meilleur coup de chacun de ces beliefStates
+	private DecisionEngine engine = this::searchNextMove; //Le moteur qui choisit le prochain coup : par défaut, la recherche andSearch/orSearch
 
-	ArrayList<ArrayList<String>> actions;
 	/**
-	 * construct an empty plan
+	 * fixe le budget de temps accordé à chaque coup ; s'il est strictement positif, findNextMove fait de l'approfondissement itératif
+	 * @param timeBudget le budget de temps en millisecondes (0 pour revenir à une recherche de profondeur deepthMax)
 	 */
-	public Plans() {
-		this.results = new ArrayList<Result>();
-		this.actions = new ArrayList<ArrayList<String>>();
-
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
 	}
+
 	/**
-	 * add a new pair of belief-state and corresponding (equivalent) actions
-	 * @param beliefBeliefState the belief state to add
-	 * @param action a list of alternative actions to perform. Only one of them is chosen but their results should be similar
+	 * fixe la mémoire allouée à la table de transposition ; la table est vidée
+	 * @param megaBytes la taille maximale de la table en Mo
 	 */
-	public void addPlan(Result beliefBeliefState, ArrayList<String> action) {
-		this.results.add(beliefBeliefState);
-		this.actions.add(action);
+	public void setTranspositionTableSize(long megaBytes) {
+		this.transpositionTableSize = megaBytes;
+		this.transpositionTable = new TranspositionTable(megaBytes << 20);
+	}
 
+	/**
+	 * à appeler à chaque changement de niveau : les scores et le chemin enregistrés pour le niveau précédent sont oubliés
+	 */
+	public void newLevel() {
+		stopPondering();
+		ponderedBeliefStates.clear();
+		ponderedMoves.clear();
+		transpositionTable.newLevel();
+		Arrays.fill(visits, 0);
+		currentScore = -1;
+		searchTree.clear();
+		lastMove = null;
+		engine.newLevel();
 	}
+
 	/**
-	 * return the number of belief-states/actions pairs
-	 * @return the number of belief-states/actions pairs
+	 * limite le nombre de beliefStates explorés par result : au-delà, les beliefStates sont répartis en autant de strates consécutives et un seul est tiré dans chaque strate
+	 * @param beliefStatesMax le nombre maximal de beliefStates explorés pour un result dont les beliefStates sont à la profondeur restante 0, 1, 2... (la dernière valeur vaut pour les profondeurs suivantes, 0 pour ne pas limiter)
 	 */
-	public int size() {
-		return this.results.size();
+	public void setBeliefStatesMax(int... beliefStatesMax) {
+		this.beliefStatesMax = beliefStatesMax.clone();
+	}
 
+	/**
+	 * fixe le nombre maximal de beliefStates étendus conservés d'un coup à l'autre ; l'arbre est vidé
+	 * @param maxSize le nombre maximal de beliefStates étendus (0 pour ne rien conserver)
+	 */
+	public void setSearchTreeSize(int maxSize) {
+		this.searchTree = new SearchTree(maxSize);
+		this.lastMove = null;
 	}
+
 	/**
-	 * return one of the belief-state of the plan
-	 * @param index index of the belief-state
-	 * @return the belief-state corresponding to the index
+	 * active ou désactive la réflexion pendant le déplacement du pacman : dès qu'un coup est choisi, un thread cherche le meilleur coup depuis chacun des beliefStates possibles après ce coup,
+	 * et findNextMove renvoie directement le coup trouvé pour celui qui est observé
+	 * @param pondering vrai pour réfléchir pendant le déplacement du pacman
 	 */
-	public Result getResult(int index) {
-		return this.results.get(index);
+	public void setPondering(boolean pondering) {
+		stopPondering();
+		this.pondering = pondering;
+	}
 
+	/**
+	 * fixe le moteur utilisé par findNextMove pour choisir le prochain coup, par exemple un MonteCarloEngine
+	 * @param engine le moteur de décision (null pour revenir à la recherche andSearch/orSearch)
+	 */
+	public void setEngine(DecisionEngine engine) {
+		this.engine = engine == null ? this::searchNextMove : engine;
 	}
+
 	/**
-	 * return the list of actions performed for a given belief-state
-	 * @param index index of the belief-state
-	 * @return the set of actions to perform for the belief-state corresponding to the index
+	 * fixe le nombre de threads de la recherche ; au-delà de 1, chaque action possible depuis la racine est évaluée par une tâche d'un ForkJoinPool.
+	 * Seul l'ordre dans lequel les scores des tâches sont combinés est fixé : les tâches lisent les entrées que les autres écrivent dans la table de transposition
+	 * (ainsi que sa profondeur maximale), si bien que les scores, et donc le coup choisi, peuvent dépendre de l'ordonnancement des threads
+	 * @param parallelism le nombre de threads (1 pour une recherche séquentielle)
+	 * @param parallelOrSearch si vrai, les beliefStates de chaque result de la racine sont aussi répartis entre les threads, avec ou sans élagage
 	 */
-	public ArrayList<String> getAction(int index){
-		return this.actions.get(index);
+	public void setParallelism(int parallelism, boolean parallelOrSearch) {
+		this.parallelism = Math.max(1, parallelism);
+		this.parallelOrSearch = parallelOrSearch;
+	}
 
+	/**
+	 * active ou désactive l'élagage de la recherche ; le coup choisi est le même que celui de la recherche complète, mais beaucoup moins de beliefStates sont explorés
+	 * @param pruning vrai pour élaguer la recherche
+	 */
+	public void setPruning(boolean pruning) {
+		this.pruning = pruning;
 	}
 
-}
-/**
- * class used to represent a transition function i.e., a set of possible belief states the agent may be in after performing an action
- */
-class Result{
-	private ArrayList<BeliefState> beliefStates;
 	/**
-	 * construct a new result
-	 * @param states the set of states corresponding to the new belief state
+	 * function that compute the next action to do (among UP, DOWN, LEFT, RIGHT)
+	 * @param beliefState the current belief-state of the agent
+	 * @return a string describing the next action (among PacManLauncher.UP/DOWN/LEFT/RIGHT)
 	 */
-	public Result(ArrayList<BeliefState> states) {
-		this.beliefStates = states;
+	public String findNextMove(BeliefState beliefState){
+
+		//La réflexion sur ce coup s'arrête : le beliefState est maintenant connu
+		stopPondering();
+
+		addToPath(beliefState);
 
+		return engine.findNextMove(beliefState);
 	}
+
 	/**
-	 * returns the number of belief states
-	 * @return the number of belief states
+	 * ajoute la position du pacman au chemin
+	 * @param beliefState le BeliefState dans lequel le pacman doit choisir un coup
 	 */
-	public int size() {
-		return this.beliefStates.size();
+	private void addToPath(BeliefState beliefState){
+		//S'il y a un changement de score, on oublie le chemin
+		if(currentScore!=-1 && beliefState.getScore() != currentScore){
+			Arrays.fill(visits, 0);
+		}
+		if(visits.length != beliefState.getMapSize() * beliefState.getMapSize()){
+			taille = beliefState.getMapSize();
+			visits = new int[taille * taille];
+		}
 
+		//À chaque fois qu'on choisit un BeliefState, on retient son score et on compte un passage de plus sur la case du pacman
+		currentScore = beliefState.getScore();
+		Position pos = beliefState.getPacmanPosition();
+		visits[pos.getRow() * taille + pos.getColumn()]++;
 	}
+
 	/**
-	 * return one of the belief state
-	 * @param index the index of the belief state to return
-	 * @return the belief state to return
+	 * @param beliefState le BeliefState à partir duquel on cherche le prochain coup
+	 * @return le meilleur coup trouvé par la recherche andSearch/orSearch
 	 */
-	public BeliefState getBeliefState(int index) {
-		return this.beliefStates.get(index);
+	private String searchNextMove(BeliefState beliefState){
+		//Les entrées enregistrées lors des coups précédents seront remplacées en priorité
+		transpositionTable.newSearch();
+
+		//Si le beliefState observé fait partie de l'arbre exploré au coup précédent, on repart de son sous-arbre
+		beliefState = searchTree.reRoot(beliefState, lastMove);
 
+		//Si le coup a déjà été cherché pendant le déplacement du pacman, on le renvoie directement
+		lastMove = getPonderedMove(beliefState);
+		if(lastMove == null){
+			lastMove = search(beliefState);
+		}
+
+		if(pondering){
+			startPondering(beliefState, lastMove);
+		}
+		return lastMove;
 	}
+
 	/**
-	 * return the list of belief-states
-	 * @return the list of belief-states
+	 * @param beliefState le BeliefState à partir duquel on cherche le prochain coup
+	 * @return le meilleur coup trouvé par la recherche, à profondeur fixe ou en approfondissement itératif
 	 */
-	public ArrayList<BeliefState> getBeliefStates(){
-		return this.beliefStates;
+	private String search(BeliefState beliefState){
+		//Si un budget de temps est fixé, on approfondit la recherche tant qu'il reste du temps
+		if(timeBudget > 0){
+			return iterativeDeepening(beliefState);
+		}
+		return rootSearch(beliefState, deepthMax); //Appel de la fonction rootSearch
+	}
 
+	/**
+	 * @param beliefState le BeliefState observé
+	 * @return le coup trouvé pendant le déplacement du pacman pour ce beliefState, ou null s'il n'a pas été cherché
+	 */
+	private String getPonderedMove(BeliefState beliefState){
+		String move = null;
+		for(int i = 0; i < ponderedBeliefStates.size(); i++){
+			if(ponderedBeliefStates.get(i).equals(beliefState)){
+				move = ponderedMoves.get(i);
+				break;
+			}
+		}
+		ponderedBeliefStates.clear();
+		ponderedMoves.clear();
+		return move;
 	}
 
-}
+	/**
+	 * lance le thread qui cherche le meilleur coup depuis chacun des beliefStates possibles après le coup choisi
+	 * @param beliefState le BeliefState depuis lequel le coup a été choisi
+	 * @param move le coup choisi
+	 */
+	private void startPondering(BeliefState beliefState, String move){
+		Plans plan = searchTree.extendsBeliefState(beliefState);
+		ArrayList<BeliefState> beliefStates = null;
+		for(int i = 0; i < plan.size(); i++){
+			if(plan.getAction(i).contains(move)){
+				beliefStates = plan.getResult(i).getBeliefStates();
+			}
+		}
+		if(beliefStates == null){
+			return;
+		}
+		ArrayList<BeliefState> toPonder = beliefStates;
+		ponderStopped = false;
+		ponderer = new Thread(() -> this.ponder(toPonder), "AI-ponder");
+		ponderer.setDaemon(true);
+		ponderer.start();
+	}
 
-/**
- * class implement the AI to choose the next move of the Pacman
- */
-public class AI{
+	/**
+	 * cherche le meilleur coup depuis chaque beliefState, avec le chemin que findNextMove aurait s'il était observé, jusqu'à ce que findNextMove arrête la réflexion
+	 * @param beliefStates les beliefStates possibles après le coup choisi
+	 */
+	private void ponder(ArrayList<BeliefState> beliefStates){
+		int[] savedVisits = visits;
+		int savedScore = currentScore;
+		try{
+			for(BeliefState beliefState : beliefStates){
+				if(ponderStopped){
+					break;
+				}
+				visits = savedVisits.clone();
+				currentScore = savedScore;
+				addToPath(beliefState);
+				transpositionTable.newSearch();
+				String move = search(beliefState);
+				//Une recherche interrompue n'a pas de résultat fiable
+				if(move != null && !ponderStopped){
+					ponderedBeliefStates.add(beliefState);
+					ponderedMoves.add(move);
+				}
+			}
+		}
+		finally{
+			visits = savedVisits;
+			currentScore = savedScore;
+		}
+	}
 
-	private static TreeMap<BeliefState, Double> transpositionTable = new TreeMap<>(); //Une table de transposition qui va permettre de stocker les beliefState déjà rencontrés et leur score
-	private static HashMap<Double, String> moves = new HashMap<>(); //Une Map qui va stocker les différentes actions possibles à partir d'un beliefState ainsi que leur score associé
-	private static ArrayList<Position> path = new ArrayList<>(); //Une liste qui va stocker les différentes positions du pacman au cours du jeu
-	private static int currentScore=-1; //Le score actuel du pacman
-	private static String bestMove; //Le mouvement rapportant le meilleur score
-	private final static int deepthMax = 4; //Profondeur maximale de recherche
+	/**
+	 * arrête le thread qui cherche le coup suivant et attend qu'il ait rendu le chemin
+	 */
+	private void stopPondering(){
+		if(ponderer == null){
+			return;
+		}
+		ponderStopped = true;
+		try{
+			ponderer.join();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		ponderer = null;
+		ponderStopped = false;
+	}
 
 	/**
-	 * function that compute the next action to do (among UP, DOWN, LEFT, RIGHT)
-	 * @param beliefState the current belief-state of the agent
-	 * @return a string describing the next action (among PacManLauncher.UP/DOWN/LEFT/RIGHT)
+	 * @param beliefState le BeliefState à partir duquel on cherche le prochain coup
+	 * @return le meilleur coup trouvé par la dernière itération complète (profondeur 1, 2, 3... jusqu'à épuisement du budget de temps)
 	 */
-	public static String findNextMove(BeliefState beliefState){
+	private String iterativeDeepening(BeliefState beliefState){
+		deadline = System.currentTimeMillis() + timeBudget;
+		timeOut = false;
+		String bestMoveCompleted = null;
+
+		//La profondeur 1 n'appelle jamais andSearch depuis orSearch : elle va toujours jusqu'au bout, on a donc toujours un coup à jouer
+		for(int deepth = 1; deepth <= deepthMaxIterative && !timeOut; deepth++){
+			String move = rootSearch(beliefState, deepth);
+			//Si l'itération a été interrompue, son résultat est incomplet : on garde celui de l'itération précédente
+			if(!timeOut){
+				bestMoveCompleted = move;
+			}
+		}
+		return bestMoveCompleted;
+	}
 
-		//S'il y a un changement de score, on vide la liste du chemin
-		if(currentScore!=-1 && beliefState.getScore() != currentScore){
-			path.clear();
+	/**
+	 * @return true si un budget de temps est fixé et qu'il est dépassé
+	 */
+	private boolean isTimeOut(){
+		//La réflexion pendant le déplacement du pacman s'arrête comme une recherche hors budget
+		if(ponderStopped){
+			timeOut = true;
+			return true;
+		}
+		if(timeBudget <= 0){
+			return false;
+		}
+		if(!timeOut && System.currentTimeMillis() > deadline){
+			timeOut = true;
 		}
+		return timeOut;
+	}
 
-		//À chaque fois qu'on choisit un BeliefState, on ajoute son score et la position du pacman aux listes scores et path
-		currentScore = beliefState.getScore();
-		path.add(beliefState.getPacmanPosition());
 
-		moves.clear();
+	/**
+	 * @param result le result dont on cherche le score
+	 * @param deepth la profondeur de la recherche
+	 * @return le score moyen de tous les beliefStates du result en argument, pondéré par leur poids
+	 */
+	public double orSearch(Result result, int deepth) {
+		result = sample(result, deepth);
+		double somme = 0;
+
+		for(int i = 0; i < result.size(); i++){
+			//Si le budget de temps est dépassé, on abandonne : le résultat de cette itération sera ignoré
+			if(deepth > 0 && isTimeOut()){
+				return 0;
+			}
+			somme += result.getWeight(i) * getScore(result.getBeliefState(i), deepth);
+		}
+		return somme/result.getTotalWeight();
+
+	}
 
-		andSearch(beliefState,deepthMax); //Appel de la fonction andSearch
+	/**
+	 * @param beliefState un des beliefStates d'un result
+	 * @param deepth la profondeur de la recherche
+	 * @return le score du beliefState : l'heuristique si la profondeur est nulle, le score renvoyé par andSearch sinon
+	 */
+	private double getScore(BeliefState beliefState, int deepth) {
+		//Si le beliefState est déjà présent dans la table de transposition avec un score calculé au moins aussi profondément, on renvoie directement le score qui est stocké
+		double stored = transpositionTable.get(beliefState, deepth);
+		if(!Double.isNaN(stored)){
+			//S'il y a un cycle, on ajoute un malus au score stocké (sauf sur une feuille, où l'heuristique le compte déjà)
+			if(deepth > 0 && containsCycle(beliefState.getPacmanPosition())){
+				stored -= 1;
+			}
+			return stored;
+		}
 
-		return AI.bestMove;
+		//Si la profondeur est égale à 0, on n'appelle plus andSearch, on fait désormais appel à l'heuristique pour estimer le score potentiel de chaque action
+		double score = deepth == 0 ? getHeuristic(beliefState) : andSearch(beliefState, deepth);
+		//On ajoute le beliefState et son score associé à la table de transposition, sauf si la recherche a été interrompue
+		if(!isTimeOut()){
+			transpositionTable.put(beliefState, deepth, score);
+		}
+		return score;
 	}
 
+	/**
+	 * @param result le result dont on cherche le score
+	 * @param deepth la profondeur de la recherche
+	 * @return le score moyen (pondéré) de tous les beliefStates du result, chacun étant évalué par une tâche du pool
+	 */
+	private double orSearchParallel(Result result, int deepth) {
+		result = sample(result, deepth);
+		ArrayList<ForkJoinTask<Double>> tasks = new ArrayList<>();
+		for(BeliefState beliefState : result.getBeliefStates()){
+			tasks.add(ForkJoinTask.adapt(() -> this.getScore(beliefState, deepth)).fork());
+		}
+		//On additionne les scores dans l'ordre des beliefStates, quel que soit l'ordre de fin des tâches (les scores eux-mêmes peuvent dépendre de l'ordonnancement, voir setParallelism)
+		double somme = 0;
+		for(int i = 0; i < tasks.size(); i++){
+			somme += result.getWeight(i) * tasks.get(i).join();
+		}
+		return somme/result.getTotalWeight();
+	}
 
 	/**
+	 * version parallèle de orSearchStar pour un result de la racine, évalué sans fenêtre : la fenêtre de chaque beliefState ne dépend alors que de ses propres bornes,
+	 * pas des scores des autres beliefStates : ils sont évalués en même temps, avec les fenêtres que leur donnerait orSearchStar
 	 * @param result le result dont on cherche le score
 	 * @param deepth la profondeur de la recherche
-	 * @return le score moyen de tous les beliefStates du result en argument
+	 * @return le score moyen (pondéré) de tous les beliefStates du result, chacun étant évalué par une tâche du pool
 	 */
-	public static double orSearch(Result result, int deepth) {
-        double somme = 0;
+	private double orSearchStarParallel(Result result, int deepth) {
+		Result sampled = sample(result, deepth);
+		int deepthBound = Math.max(deepth, transpositionTable.getMaxDepth());
+		ArrayList<ForkJoinTask<Double>> tasks = new ArrayList<>();
+		for(BeliefState beliefState : sampled.getBeliefStates()){
+			//Les bornes sont calculées avant de lancer les tâches, comme dans orSearchStar ; les autres tâches peuvent encore augmenter la profondeur maximale de la table
+			double scoreMax = getScoreMax(beliefState, deepthBound);
+			tasks.add(ForkJoinTask.adapt(() -> this.getScoreStar(beliefState, deepth, scoreMin, scoreMax)).fork());
+		}
+		//On additionne les scores dans l'ordre des beliefStates, quel que soit l'ordre de fin des tâches (les scores eux-mêmes peuvent dépendre de l'ordonnancement, voir setParallelism)
+		double somme = 0;
+		for(int i = 0; i < tasks.size(); i++){
+			somme += sampled.getWeight(i) * tasks.get(i).join();
+		}
+		return somme/sampled.getTotalWeight();
+	}
 
-		//Si la profondeur est égale à 0, on n'appelle plus andSearch, on fait désormais appel à l'heuristique pour estimer le score potentiel de chaque action
-        if(deepth == 0){
-            double score;
-			for(BeliefState beliefState : result.getBeliefStates()){
-				//Si le beliefState est déjà présent dans la table de transposition, on n'a pas besoin de faire appel à l'heuristique ; on renvoie directement le score qui est stocké
-				if(transpositionTable.containsKey(beliefState)){
-					score = transpositionTable.get(beliefState);
+	/**
+	 * @param result un result
+	 * @param deepth la profondeur restante de ses beliefStates
+	 * @return le result lui-même s'il ne dépasse pas le nombre maximal de beliefStates de cette profondeur, sinon un result formé d'un beliefState tiré dans chaque strate (de même poids)
+	 */
+	private Result sample(Result result, int deepth) {
+		if(beliefStatesMax.length == 0){
+			return result;
+		}
+		int max = beliefStatesMax[Math.min(deepth, beliefStatesMax.length - 1)];
+		if(max <= 0 || result.size() <= max){
+			return result;
+		}
+		//Les beliefStates d'un result sont rangés par positions des fantômes : des strates consécutives de même poids (à un près) les couvrent tous
+		int n = result.getTotalWeight();
+		//Le tirage ne dépend que du result et de la profondeur, pas du thread qui l'atteint ni du moment où il l'atteint
+		SplittableRandom tirage = new SplittableRandom(result.getBeliefState(0).getZobristKey() ^ deepth);
+		ArrayList<BeliefState> beliefStates = new ArrayList<>(max);
+		for(int i = 0; i < max; i++){
+			int debut = i * n / max;
+			int fin = (i + 1) * n / max;
+			beliefStates.add(result.getBeliefState(result.indexOfWeight(debut + tirage.nextInt(fin - debut))));
+		}
+		return new Result(beliefStates);
+	}
+
+	/**
+	 * @param beliefState le BeliefState à la racine de la recherche
+	 * @param deepth la profondeur de la recherche
+	 * @return le mouvement ayant le meilleur score parmi les actions possibles depuis le beliefState
+	 */
+	private String rootSearch(BeliefState beliefState, int deepth) {
+		Plans plan = searchTree.extendsBeliefState(beliefState); //On étend le beliefState (s'il ne l'a pas déjà été lors d'un coup précédent)
+		double[] scores = new double[plan.size()];
+
+		if(parallelism > 1){
+			//Chaque action est évaluée par une tâche du pool ; les tâches partagent la table de transposition et l'arbre de recherche
+			ArrayList<ForkJoinTask<Double>> tasks = new ArrayList<>();
+			for (int i = 0; i < plan.size(); i++) {
+				Result result = plan.getResult(i);
+				if(plan.getAction(i).size()>1){
+					tasks.add(null);
+					continue;
+				}
+				if(pruning){
+					tasks.add(getPool().submit(() -> parallelOrSearch ? this.orSearchStarParallel(result, deepth-1) : this.orSearchStar(result, deepth-1, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY)));
 				}
-				//Sinon, on fait appel à l'heuristique, et on ajoute le beliefState et son score associé à la table de transposition
 				else{
-					score = getHeuristic(beliefState);
-					transpositionTable.put(beliefState, score);
+					tasks.add(getPool().submit(() -> parallelOrSearch ? this.orSearchParallel(result, deepth-1) : this.orSearch(result, deepth-1)));
 				}
-				somme += score;
 			}
-
-        }
-		//Sinon, on appelle encore andSearch
+			for (int i = 0; i < plan.size(); i++) {
+				if(tasks.get(i) != null){
+					scores[i] = tasks.get(i).join();
+				}
+			}
+		}
+		else if(pruning){
+			//Les actions les plus prometteuses sont évaluées en premier : les suivantes sont élaguées dès qu'elles ne peuvent plus faire mieux
+			//La borne est juste en dessous du meilleur score, pour qu'une égalité soit départagée comme dans la recherche complète
+			double scoreMax = Double.NEGATIVE_INFINITY;
+			for (int i : orderPlans(plan)) {
+				scores[i] = orSearchStar(plan.getResult(i), deepth-1, Math.nextDown(scoreMax), Double.POSITIVE_INFINITY);
+				scoreMax = Math.max(scoreMax, scores[i]);
+			}
+		}
 		else{
-            double score;
-			for(BeliefState beliefState : result.getBeliefStates()){
-				if(transpositionTable.containsKey(beliefState)){
-					score = transpositionTable.get(beliefState);
-					//S'il y a un cycle, on ajoute un malus au score:
-					if(containsCycle(beliefState.getPacmanPosition())){
-						score-=1;
-					}
-				} else{
-					score = andSearch(beliefState, deepth);
+			for (int i = 0; i < plan.size(); i++) {
+				if(plan.getAction(i).size()>1){
+					continue;
 				}
-				somme += score;
+				scores[i] = orSearch(plan.getResult(i), deepth-1); //On récupère le score moyen de tous les beliefState du result
 			}
-        }
-        return somme/result.getBeliefStates().size();
-
-    }
+		}
 
+		//On parcourt les actions dans l'ordre du plan : à scores égaux, le choix ne dépend pas de l'ordre de fin des tâches
+		double scoreMax = -1;
+		String move = null;
+		for (int i = 0; i < plan.size(); i++) {
+			//On lui interdit les murs
+			if(plan.getAction(i).size()>1){
+				continue;
+			}
+			if(scoreMax <= scores[i]){
+				scoreMax = scores[i]; //Mise à jour du score maximum si on trouve un meilleur candidat
+				move = plan.getAction(i).get(0);
+			}
+		}
+		return move;
+	}
 
 	/**
 	 * @param beliefState le BeliefState à étendre et à explorer
 	 * @param deepth la profondeur de la recherche
 	 * @return le score maximum parmi les scores résultants des 4 actions possibles
 	 */
-	private static double andSearch(BeliefState beliefState, int deepth) { //Max
-		Plans plan = beliefState.extendsBeliefState(); //On étend le beliefState
+	private double andSearch(BeliefState beliefState, int deepth) { //Max
+		Plans plan = searchTree.extendsBeliefState(beliefState); //On étend le beliefState (s'il ne l'a pas déjà été lors d'un coup précédent)
 		double scoreMax = -1;
 
 		for (int i = 0; i < plan.size(); i++) {
@@ -196,22 +515,195 @@ public class AI{
 			if(plan.getAction(i).size()>1){
 				continue;
 			}
-			String move = plan.getAction(i).get(0); //On récupère l'action associée au score
-			moves.put(score, move); //On ajoute le score et le mouvement associé dans une liste
 			if(scoreMax < score){
 				scoreMax = score; //Mise à jour du score maximum si on trouve un meilleur candidat
 			}
 
 		}
-		bestMove = moves.get(scoreMax); //Le meilleur score (celui qui sera utilisé par FindNextMove) est le mouvement ayant le meilleur score
 		return scoreMax; //On renvoie le meilleur score
 	}
 
+	/**
+	 * version élaguée de orSearch (Star1 avec les bornes Star2 sur chaque beliefState) : dès que la moyenne pondérée ne peut plus sortir de ]alpha, beta[, on renvoie une borne
+	 * @param result le result dont on cherche le score
+	 * @param deepth la profondeur de la recherche
+	 * @param alpha score en dessous duquel la valeur exacte n'est pas utile
+	 * @param beta score au dessus duquel la valeur exacte n'est pas utile
+	 * @return le score moyen des beliefStates s'il est dans ]alpha, beta[, sinon une borne supérieure (si <= alpha) ou inférieure (si >= beta) de ce score
+	 */
+	private double orSearchStar(Result result, int deepth, double alpha, double beta) {
+		result = sample(result, deepth);
+		ArrayList<BeliefState> beliefStates = result.getBeliefStates();
+		int n = result.getTotalWeight();
+		//La profondeur des scores lus dans la table peut dépasser celle de la recherche : les bornes doivent aussi les couvrir
+		int deepthBound = Math.max(deepth, transpositionTable.getMaxDepth());
+		double[] scoresMax = new double[beliefStates.size()];
+		double sommeMax = 0;
+		for(int i = 0; i < beliefStates.size(); i++){
+			scoresMax[i] = getScoreMax(beliefStates.get(i), deepthBound);
+			sommeMax += result.getWeight(i) * scoresMax[i];
+		}
+
+		double somme = 0; //Somme pondérée des scores des beliefStates déjà évalués
+		int poidsRestant = n; //Poids des beliefStates pas encore évalués
+		for(int i = 0; i < beliefStates.size(); i++){
+			if(deepth > 0 && isTimeOut()){
+				return 0;
+			}
+			int poids = result.getWeight(i);
+			poidsRestant -= poids;
+			sommeMax -= poids * scoresMax[i]; //Somme des bornes supérieures des beliefStates restant après celui-ci
+			double sommeMin = poidsRestant * scoreMin; //Somme des bornes inférieures des beliefStates restant après celui-ci
+			//Star1 : même avec les meilleurs (pires) scores possibles pour les beliefStates restants, la moyenne reste sous alpha (au-dessus de beta)
+			//Les bornes renvoyées sont ramenées dans la fenêtre : l'arrondi de la division ne doit pas les faire entrer dans ]alpha, beta[
+			if(somme + poids * scoresMax[i] + sommeMax <= n * alpha){
+				return Math.min((somme + poids * scoresMax[i] + sommeMax) / n, alpha);
+			}
+			if(somme + poids * scoreMin + sommeMin >= n * beta){
+				return Math.max((somme + poids * scoreMin + sommeMin) / n, beta);
+			}
+			//Fenêtre dans laquelle le score de ce beliefState peut encore faire sortir la moyenne de ]alpha, beta[
+			double alphaChild = (n * alpha - somme - sommeMax) / poids;
+			double betaChild = (n * beta - somme - sommeMin) / poids;
+			double score = getScoreStar(beliefStates.get(i), deepth, Math.max(alphaChild, scoreMin), Math.min(betaChild, scoresMax[i]));
+			somme += poids * score;
+			if(score <= alphaChild){
+				return Math.min((somme + sommeMax) / n, alpha);
+			}
+			if(score >= betaChild){
+				return Math.max((somme + sommeMin) / n, beta);
+			}
+		}
+		return somme / n;
+	}
+
+	/**
+	 * version élaguée de getScore
+	 * @param beliefState un des beliefStates d'un result
+	 * @param deepth la profondeur de la recherche
+	 * @param alpha score en dessous duquel la valeur exacte n'est pas utile
+	 * @param beta score au dessus duquel la valeur exacte n'est pas utile
+	 * @return le score du beliefState s'il est dans ]alpha, beta[, sinon une borne de ce score
+	 */
+	private double getScoreStar(BeliefState beliefState, int deepth, double alpha, double beta) {
+		double stored = transpositionTable.get(beliefState, deepth);
+		if(!Double.isNaN(stored)){
+			//S'il y a un cycle, on ajoute un malus au score stocké (sauf sur une feuille, où l'heuristique le compte déjà)
+			if(deepth > 0 && containsCycle(beliefState.getPacmanPosition())){
+				stored -= 1;
+			}
+			return stored;
+		}
+		double score = deepth == 0 ? getHeuristic(beliefState) : andSearchStar(beliefState, deepth, alpha, beta);
+		//Seuls les scores exacts (strictement dans la fenêtre) sont ajoutés à la table de transposition
+		if(alpha < score && score < beta && !isTimeOut()){
+			transpositionTable.put(beliefState, deepth, score);
+		}
+		return score;
+	}
+
+	/**
+	 * version élaguée de andSearch (alpha-beta), les actions les plus prometteuses étant explorées en premier
+	 * @param beliefState le BeliefState à étendre et à explorer
+	 * @param deepth la profondeur de la recherche
+	 * @param alpha score en dessous duquel la valeur exacte n'est pas utile
+	 * @param beta score au dessus duquel la valeur exacte n'est pas utile
+	 * @return le score maximum parmi les actions possibles s'il est dans ]alpha, beta[, sinon une borne de ce score
+	 */
+	private double andSearchStar(BeliefState beliefState, int deepth, double alpha, double beta) { //Max
+		Plans plan = searchTree.extendsBeliefState(beliefState); //On étend le beliefState (s'il ne l'a pas déjà été lors d'un coup précédent)
+		double scoreMax = -1;
+
+		for (int i : orderPlans(plan)) {
+			double score = orSearchStar(plan.getResult(i), deepth-1, Math.max(alpha, scoreMax), beta);
+			if(scoreMax < score){
+				scoreMax = score;
+			}
+			//Le noeud parent ne choisira pas ce beliefState : inutile d'explorer les autres actions
+			if(scoreMax >= beta){
+				return scoreMax;
+			}
+		}
+		return scoreMax;
+	}
+
+	/**
+	 * @param plan le plan d'un beliefState
+	 * @return les indices des actions du plan (sans les murs), la plus prometteuse en premier : celle dont le premier beliefState a le meilleur score connu (ou à défaut le meilleur score de jeu)
+	 */
+	private ArrayList<Integer> orderPlans(Plans plan) {
+		ArrayList<Integer> order = new ArrayList<>();
+		double[] estimates = new double[plan.size()];
+		for (int i = 0; i < plan.size(); i++) {
+			//On lui interdit les murs
+			if(plan.getAction(i).size()>1){
+				continue;
+			}
+			BeliefState first = plan.getResult(i).getBeliefState(0);
+			double stored = transpositionTable.get(first, 0);
+			estimates[i] = Double.isNaN(stored) ? first.getScore() : stored;
+			order.add(i);
+		}
+		order.sort((i, j) -> Double.compare(estimates[j], estimates[i]));
+		return order;
+	}
+
+	/**
+	 * @param beliefState un beliefState
+	 * @param deepth la profondeur de recherche restante sous ce beliefState
+	 * @return une borne supérieure du score que peut obtenir la recherche depuis ce beliefState : les gommes et les fantômes qui peuvent être mangés en deepth coups, plus le bonus de l'heuristique
+	 */
+	private double getScoreMax(BeliefState beliefState, int deepth) {
+		if(beliefState.getLife() <= 0){
+			return 0;
+		}
+		//Le pacman avance d'une case par coup : seules les gommes à une distance de Manhattan d'au plus deepth peuvent être mangées
+		int nbrOfGommes = 0, nbrOfSuperGommes = 0;
+		int lignePacman = beliefState.getPacmanPosition().getRow();
+		int colonnePacman = beliefState.getPacmanPosition().getColumn();
+		int taille = beliefState.getMapSize();
+		for(int i = Math.max(0, lignePacman - deepth); i <= Math.min(taille - 1, lignePacman + deepth); i++){
+			int ecart = deepth - Math.abs(lignePacman - i);
+			for(int j = Math.max(0, colonnePacman - ecart); j <= Math.min(taille - 1, colonnePacman + ecart); j++){
+				char c = beliefState.getMap(i, j);
+				if(c == '.'){
+					nbrOfGommes++;
+				}
+				else if(c == '*'){
+					nbrOfGommes++;
+					nbrOfSuperGommes++;
+				}
+			}
+		}
+		double scoreMax = beliefState.getScore() + 1 + Math.min(deepth, nbrOfGommes) * Gomme.SCORE_GOMME;
+		//Un fantôme ne peut être mangé qu'une fois par super gomme mangée, ou une fois s'il a déjà peur
+		int nbrOfFantomes = Math.min(deepth, nbrOfSuperGommes) * beliefState.getNbrOfGhost();
+		for(int i = 0; i < beliefState.getNbrOfGhost(); i++){
+			if(beliefState.getCompteurPeur(i) > 0){
+				nbrOfFantomes++;
+			}
+		}
+		return scoreMax + nbrOfFantomes * Ghost.SCORE_FANTOME;
+	}
+
+	/**
+	 * @return le pool de threads utilisé par la recherche parallèle, recréé si le nombre de threads a changé
+	 */
+	private synchronized ForkJoinPool getPool() {
+		if(pool == null || pool.getParallelism() != parallelism){
+			if(pool != null){
+				pool.shutdown();
+			}
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
 	/**
 	 * @param beliefState un beliefState à considérer
 	 * @return une estimation du score du beliefState en fonction de la distance qui sépare le Pacman des gommes restantes
 	 */
-	private static double getHeuristic(BeliefState beliefState) {
+	double getHeuristic(BeliefState beliefState) {
 		int malus = 0;
 		//Si ce beliefState mène à la mort du Pacman, on renvoie un score égal à 0
 		if(beliefState.getLife()==0){
@@ -222,23 +714,15 @@ public class AI{
 			malus+=1;
 		}
 		double bonus = 0;
-		int lignePacman = beliefState.getPacmanPosition().getRow();
-		int colonnePacman = beliefState.getPacmanPosition().getColumn();
 
-		//Le faire aller vers la gomme la plus proche (celle dont la distance de Mannhatan est la plus petite)
-		double minDistanceMannhatanGommes = 100000;
-		for (int i=0; i<25; i++){ //Nombre de lignes
-			for(int j=0; j<25; j++) { //Nombre de colonnes
-				if (beliefState.getMap(i, j) == '.') {
-					double distanceMannhatanGommes = Math.abs(lignePacman - i) + Math.abs(colonnePacman - j);
-					if(distanceMannhatanGommes < minDistanceMannhatanGommes){
-						minDistanceMannhatanGommes = distanceMannhatanGommes;
-					}
-				}
-			}
+		//Le faire aller vers la gomme la plus proche (celle dont la distance dans le labyrinthe est la plus petite), donnée par l'index des gommes du beliefState sans parcourir la map
+		double minDistanceGommes = 100000;
+		int distanceGommes = beliefState.distanceToNearestGum();
+		if(distanceGommes != Integer.MAX_VALUE){
+			minDistanceGommes = distanceGommes;
 		}
-		if(minDistanceMannhatanGommes!=0){
-			bonus = 1/minDistanceMannhatanGommes;
+		if(minDistanceGommes!=0){
+			bonus = 1/minDistanceGommes;
 		}
 
 		return beliefState.getScore() + bonus - malus;
@@ -250,21 +734,9 @@ public class AI{
 	 * @param pos la position du pacman dans le BeliefState à considérer
 	 * @return true si le nombre de cycles detectés est supérieur à 3, false sinon
 	 */
-	public static boolean containsCycle(Position pos) {
-		int cpt =0;
-		//On commence à la fin car on sait que s'il y a un cycle, il est plus probable qu'il se trouve à la fin
-		for (int i=path.size()-1; i>=0 ;i--) {
-			Position p = path.get(i);
-			//Si la position du pacman est la même qu'une des positions stockées dans path (et que le score n'a pas changé), cela signifie qu'il est revenu à un endroit déjà visité : c'est un cycle
-			if (p.getRow() == pos.getRow() && p.getColumn() == pos.getColumn()) {
-				cpt++; //Dès qu'un cycle est détécté, le compteur est incrémenté
-				if(cpt>=3){
-					return true;
-				}
-			}
-		}
-
-		return false;
-
+	public boolean containsCycle(Position pos) {
+		int cell = pos.getRow() * taille + pos.getColumn();
+		//Si le pacman est déjà passé par cette case (sans que le score ait changé), il est revenu à un endroit déjà visité : c'est un cycle
+		return cell < visits.length && visits[cell] >= 3;
 	}
 }
\ No newline at end of file
@@ -1,194 +1,325 @@
 package logic;
 
-import java.io.InputStream;
-import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashSet;
-//import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Scanner;
+import java.util.Arrays;
+import java.util.Random;
 import java.util.TreeSet;
 
-import data.Map;
 import view.Gomme;
 
 /**
- * an object Position correspond to a position in the Pacman grid
+ * an object BeliefState represents all relevant information about the game.
  */
-class Position implements Comparable{
-	public int x, y;
-	public char dir;
-
+public class BeliefState implements Comparable{
+	private long[] gums;//un bit par case (ligne * taille + colonne), a 1 si la case contient une gomme (hors super gommes)
+	private long[] superGums;//un bit par case, a 1 si la case contient une super gomme
+	private int[][] ghostPositions;//pour chaque ghost, le code de chacune de ses positions possibles (voir code()), tries par ordre croissant
+	private Position pacmanPos, pacmanOldPos;
+	private int nbrOfGommes, nbrOfSuperGommes, score, life;
+	private byte[] compteurPeur;
+	private boolean sharedGums, sharedGhosts, sharedPeur;//vrai si les tableaux des gommes, des ghosts (positions et cles) ou des compteurs de peur sont partages avec une copie de l'etat : ils sont copies avant la premiere modification
+	private long gumKey;//partie de la cle de Zobrist correspondant aux (super) gommes, mise a jour a chaque modification de la map
+	private long[] ghostKeys;//partie de la cle de Zobrist correspondant aux positions possibles de chaque ghost
+	private long zobristKey;//cle de Zobrist complete, calculee a la premiere demande, 0 si l'etat a ete modifie depuis
+	private MapContext context;//description du niveau, partagee par tous les etats de la partie
+	private static final String[] MOVES = {PacManLauncher.UP, PacManLauncher.DOWN, PacManLauncher.LEFT, PacManLauncher.RIGHT};//actions de Pacman, dans l'ordre des plans
+	
+	
 	/**
-	 * construct a new Object position corresponding to the position of an entity (ghost or pacman) in the grid
-	 * @param x row
-	 * @param y column
-	 * @param dir direction followed by the entity
+	 * create a new BeliefState object, without gums nor ghosts (see modifyMap())
+	 * @param context the description of the level, shared by all the states of the game
+	 * @param score the current score
+	 * @param life the number of remaining lifes for Pacman
 	 */
-	public Position(int x, int y, char dir) {
-		this.x = x;
-		this.y = y;
-		this.dir = dir;
+	public BeliefState(MapContext context, int score, int life) {
+		this.context = context;
+		this.gums = new long[(context.getMapSize() * context.getMapSize() + 63) / 64];
+		this.superGums = new long[this.gums.length];
+		this.pacmanPos = context.position(0,0,'U');
+		this.pacmanOldPos = this.pacmanPos;
+		this.ghostPositions = new int[0][];
+		this.nbrOfGommes = 0;
+		this.score = score;
+		this.compteurPeur = new byte[0];
+		this.life = life;
+		this.gumKey = 0;
+		this.ghostKeys = new long[0];
 	}
-	
+
 	/**
-	 * return the row index
-	 * @return the row index
+	 * return the index of a code among the first codes of an array
+	 * @param codes array of codes
+	 * @param nbrCodes number of codes to look at
+	 * @param code the code to look for
+	 * @return the index of the code, -1 if it is not among the first nbrCodes codes
 	 */
-	int getRow() {
-		return this.x;
+	private static int indexOf(int[] codes, int nbrCodes, int code) {
+		for(int index = 0; index < nbrCodes; index++) {
+			if(codes[index] == code)
+				return index;
+		}
+		return -1;
 	}
-	
+
 	/**
-	 * return the column index
-	 * @return the column index
+	 * return the 64-bit Zobrist key of the state : the gums and ghosts parts are maintained incrementally, Pacman, the fear counters, the score and the number of lifes are added here.
+	 * The key is kept until the next modification of the state
+	 * @return the Zobrist key of the state
 	 */
-	int getColumn() {
-		return this.y;
+	public long getZobristKey() {
+		if(this.zobristKey != 0)
+			return this.zobristKey;
+		long key = this.gumKey ^ this.context.pacmanKey(this.pacmanPos);
+		for(int k = 0; k < this.ghostKeys.length; k++) {
+			int peur = this.compteurPeur[k];
+			key ^= this.ghostKeys[k] ^ Long.rotateLeft(this.context.fearKey(peur), k + 1);
+		}
+		key ^= ((this.score * 0x9E3779B97F4A7C15L) + this.life) * 0xBF58476D1CE4E5B9L;
+		this.zobristKey = key;
+		return key;
 	}
-	
+
 	/**
-	 * return direction (among 'U', 'D', 'L', 'R')
-	 * @return
+	 * return a 64-bit hash of the whole content of the state (Pacman, score, lifes, gums, fear counters and possible positions of the ghosts), computed independently of the Zobrist key :
+	 * the transposition table stores it to check that two states sharing the same Zobrist key are really the same
+	 * @return the hash of the state
 	 */
-	char getDirection() {
-		return this.dir;
+	long getCheckKey() {
+		long key = BeliefState.mix(this.context.code(this.pacmanPos), this.score);
+		key = BeliefState.mix(key, ((long)this.life << 32) | ((long)this.nbrOfGommes << 16) | this.nbrOfSuperGommes);
+		for(int i = 0; i < this.gums.length; i++) {
+			key = BeliefState.mix(BeliefState.mix(key, this.gums[i]), this.superGums[i]);
+		}
+		for(int k = 0; k < this.ghostPositions.length; k++) {
+			key = BeliefState.mix(key, ((long)this.compteurPeur[k] << 32) | this.ghostPositions[k].length);
+			for(int code: this.ghostPositions[k]) {
+				key = BeliefState.mix(key, code);
+			}
+		}
+		return key;
 	}
 
-	public String toString() {
-		return "(" + this.x + "," + this.y + ") " + this.dir;
+	/**
+	 * add a value to a hash (finalizer of SplitMix64)
+	 * @param key the hash of the previous values
+	 * @param value the value to add
+	 * @return the new hash
+	 */
+	private static long mix(long key, long value) {
+		long z = (key ^ value) + 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
 	}
 
 	/**
-	 * construct a copie of a given position
-	 * @param pos
+	 * @return the Zobrist key of the state folded on 32 bits
 	 */
-	public Position clone() {
-		return new Position(this.x, this.y, this.dir);
+	@Override
+	public int hashCode() {
+		long key = this.getZobristKey();
+		return (int)(key ^ (key >>> 32));
 	}
-	
-	
+
 	/**
-	 * used to compare two positions
-	 * @return 0 if the two positions are the same
+	 * two states are equal if compareTo returns 0 : states with different Zobrist keys are rejected without comparing their content
+	 * @param o the object to compare with
+	 * @return true if o is a BeliefState equal to this one
 	 */
-	public int compareTo(Object o) {
-		Position pos = (Position)o;
-		int comp = this.x - pos.x;
-		if(comp != 0)
-			return comp;
-		comp = this.y - pos.y;
-		if(comp != 0)
-			return comp;
-		comp = this.dir - pos.dir;
-		if(comp != 0)
-			return comp;
-		return 0; 
+	@Override
+	public boolean equals(Object o) {
+		if(this == o)
+			return true;
+		if(!(o instanceof BeliefState))
+			return false;
+		BeliefState bs = (BeliefState) o;
+		return this.getZobristKey() == bs.getZobristKey() && this.compareTo(bs) == 0;
 	}
-}
 
-/**
- * an object BeliefState represents all relevant information about the game.
- */
-public class BeliefState implements Comparable{
-	private char map[][];
-	private ArrayList<TreeSet<Position>> listPGhost;
-	private Position pacmanPos, pacmanOldPos;
-	private int nbrOfGommes, nbrOfSuperGommes, score, life;
-	private ArrayList<Integer> compteurPeur;
-	private static ArrayList<int[]> gamePositions;
-	private static HashSet<String> visible;
-	private static int pacmanXInit, pacmanYInit;
-	private static ArrayList<int[]> listPGhostInit;
-	private static int tailleCase;
-	private static int taille;
-	
-	
-	public static void setStaticVariables(ArrayList<int[]> gamePositions, HashSet<String> visible, int pacmanXInit, int pacmanYInit, ArrayList<int[]> listPGhostInit, int tailleCase, int taille) {
-		BeliefState.gamePositions = gamePositions;
-		BeliefState.visible = visible;
-		BeliefState.pacmanXInit = pacmanXInit;
-		BeliefState.pacmanYInit = pacmanYInit;
-		BeliefState.listPGhostInit = listPGhostInit;
-		BeliefState.tailleCase = tailleCase;
-		BeliefState.taille = taille;
+	/**
+	 * move Pacman
+	 * @param pos the new position of Pacman
+	 */
+	private void setPacmanPos(Position pos) {
+		this.pacmanPos = pos;
+		this.zobristKey = 0;
 	}
+
 	/**
-	 * create a new BeliefState object
-	 * @param theMap the current version of the Pacman man discribing the position of (super) gums
-	 * @param score the current score
-	 * @param life the number of remaining lifes for Pacman
+	 * add points to the score
+	 * @param points the points won
 	 */
-	public BeliefState(int taille, int score, int life) {
-		BeliefState.taille = taille;
-		this.map = new char[BeliefState.taille][BeliefState.taille];
-		this.pacmanPos = new Position(0,0,'U');
-		this.pacmanOldPos = this.pacmanPos;
-		this.listPGhost = new ArrayList<TreeSet<Position>>();
-		this.nbrOfGommes = 0;
-		this.score = score;
-		this.compteurPeur = new ArrayList<Integer>();
-		this.life = life;
+	private void addScore(int points) {
+		this.score += points;
+		this.zobristKey = 0;
 	}
-	
-	/*public BeliefState(InputStream in) {
-		Scanner scan = new Scanner(in);
-		BeliefState.taille = scan.nextInt();
-		scan.nextLine();
-		this.map = new char[BeliefState.taille][BeliefState.taille];
-		for(int i = 0; i < BeliefState.taille; i++) {
-			String line = scan.nextLine();
-			for(int j = 0; j < BeliefState.taille; j++) {
-				this.map[i][j] = line.charAt(j);
-			}
+
+	/**
+	 * update the content of a square of the map and the Zobrist key accordingly.
+	 * Only the (super) gums are stored : walls, ghosts starting squares and Pacman are deduced from the layout of the level (MapContext) and from the position of Pacman
+	 * @param i row of the square
+	 * @param j column of the square
+	 * @param val new content of the square
+	 */
+	private void setCell(int i, int j, char val) {
+		this.zobristKey = 0;
+		if(this.sharedGums) {
+			this.gums = this.gums.clone();
+			this.superGums = this.superGums.clone();
+			this.sharedGums = false;
+		}
+		int cell = i * this.context.getMapSize() + j;
+		long bit = 1L << cell;
+		if((this.gums[cell >>> 6] & bit) != 0)
+			this.gumKey ^= this.context.gumKey(cell);
+		if((this.superGums[cell >>> 6] & bit) != 0)
+			this.gumKey ^= this.context.superGumKey(cell);
+		this.gums[cell >>> 6] &= ~bit;
+		this.superGums[cell >>> 6] &= ~bit;
+		if(val == '.') {
+			this.gums[cell >>> 6] |= bit;
+			this.gumKey ^= this.context.gumKey(cell);
+		}
+		else if(val == '*') {
+			this.superGums[cell >>> 6] |= bit;
+			this.gumKey ^= this.context.superGumKey(cell);
 		}
-		int pacmanPosX = scan.nextInt(), pacmanPosY = scan.nextInt();
-		BeliefState.pacmanXInit = scan.nextInt();
-		BeliefState.pacmanYInit = scan.nextInt();
-		BeliefState.tailleCase = scan.nextInt();
-		scan.nextLine();
-		String line = scan.nextLine();
-		this.pacmanPos = new Position(pacmanPosX, pacmanPosY, line.charAt(0));
-		this.score = scan.nextInt();
-		this.life = scan.nextInt();
-		this.nbrOfGommes = scan.nextInt();
-		this.nbrOfSuperGommes = scan.nextInt();
-		int sizeListPGhost = scan.nextInt();
-		this.listPGhost = new ArrayList<TreeSet<Position>>();
-		this.compteurPeur = new ArrayList<Integer>();
-		BeliefState.listPGhostInit = new ArrayList<int[]>();
-		for(int i = 0; i < sizeListPGhost; i++) {
-			TreeSet<Position> posGhost = new TreeSet<Position>();
-			this.compteurPeur.add(scan.nextInt());
-			int nbrPos = scan.nextInt();
-			for(int index = 0; index < nbrPos; index++) {
-				int x = scan.nextInt();
-				int y = scan.nextInt();
-				line = scan.nextLine();
-				char dir = line.charAt(1);
-				Position posG = new Position(x, y, dir);
-				posGhost.add(posG);
-			}
-			this.listPGhost.add(posGhost);
-			int[] posG = new int[2];
-			posG[0] = scan.nextInt();
-			posG[1] = scan.nextInt();
-			BeliefState.listPGhostInit.add(posG);
+	}
+
+	/**
+	 * return the content of a square, ignoring Pacman
+	 * @param i row of the square
+	 * @param j column of the square
+	 * @return '#' for a wall, '.' for a gum, '*' for a super gum, 'F' for the starting square of a ghost, 'O' otherwise
+	 */
+	private char getContent(int i, int j) {
+		int cell = i * this.context.getMapSize() + j;
+		long bit = 1L << cell;
+		if(this.context.isWall(cell))
+			return '#';
+		if((this.gums[cell >>> 6] & bit) != 0)
+			return '.';
+		if((this.superGums[cell >>> 6] & bit) != 0)
+			return '*';
+		if(this.context.isGhostStart(cell))
+			return 'F';
+		return 'O';
+	}
+
+	/**
+	 * set a single possible position for one of the ghosts
+	 * @param k Id of the ghost
+	 * @param pos the only possible position of the ghost
+	 */
+	private void setGhostPosition(int k, Position pos) {
+		this.unshareGhosts();
+		int code = this.context.code(pos);
+		this.ghostPositions[k] = new int[] {code};
+		this.ghostKeys[k] = this.context.ghostKey(k, code);
+		this.zobristKey = 0;
+	}
+
+	/**
+	 * replace the set of possible positions of one of the ghosts.
+	 * The state keeps its own array of the exact size, shared with its copies : the buffer is copied into a new array
+	 * @param k Id of the ghost
+	 * @param newCodes codes of the new possible positions of the ghost, in any order and possibly repeated : the array is sorted and used as a buffer
+	 * @param nbrCodes number of codes in newCodes
+	 */
+	private void setGhostPositions(int k, int[] newCodes, int nbrCodes) {
+		Arrays.sort(newCodes, 0, nbrCodes);
+		int nbrPositions = 0;
+		for(int index = 0; index < nbrCodes; index++) {//supprime les doublons
+			if(nbrPositions == 0 || newCodes[index] != newCodes[nbrPositions - 1])
+				newCodes[nbrPositions++] = newCodes[index];
+		}
+		int[] codes = Arrays.copyOf(newCodes, nbrPositions);
+		long key = 0;
+		for(int code: codes) {
+			key ^= this.context.ghostKey(k, code);
+		}
+		this.unshareGhosts();
+		this.ghostPositions[k] = codes;
+		this.ghostKeys[k] = key;
+		this.zobristKey = 0;
+	}
+
+	/**
+	 * copy the arrays of the ghosts if they are shared with another state.
+	 * The codes of the positions of a ghost are never modified (they are replaced), so they can stay shared
+	 */
+	private void unshareGhosts() {
+		if(this.sharedGhosts) {
+			this.ghostPositions = this.ghostPositions.clone();
+			this.ghostKeys = this.ghostKeys.clone();
+			this.sharedGhosts = false;
 		}
-		int gamePositionSize = scan.nextInt();
-		BeliefState.gamePositions = new ArrayList<int[]>();
-		for(int index = 0; index < gamePositionSize; index++) {
-			int[] posCell = new int[2];
-			posCell[0] = scan.nextInt();
-			posCell[1] = scan.nextInt();
-			BeliefState.gamePositions.add(posCell);
+	}
+
+	/**
+	 * set the fear counter of one of the ghosts, copying the counters first if they are shared with another state
+	 * @param k Id of the ghost
+	 * @param peur new value of the counter
+	 */
+	private void setCompteurPeur(int k, int peur) {
+		if(this.sharedPeur) {
+			this.compteurPeur = this.compteurPeur.clone();
+			this.sharedPeur = false;
 		}
-		while(scan.hasNext()) {
-			line = scan.nextLine();
-			BeliefState.visible.add(line);
+		this.compteurPeur[k] = (byte)peur;
+		this.zobristKey = 0;
+	}
+
+	/**
+	 * add a new ghost with a single possible position
+	 * @param pos position of the ghost
+	 */
+	private void addGhost(Position pos) {
+		int k = this.ghostPositions.length;
+		this.ghostPositions = Arrays.copyOf(this.ghostPositions, k + 1);
+		this.compteurPeur = Arrays.copyOf(this.compteurPeur, k + 1);
+		this.ghostKeys = Arrays.copyOf(this.ghostKeys, k + 1);
+		this.sharedGhosts = false;
+		this.sharedPeur = false;
+		this.setGhostPosition(k, pos);
+	}
+	
+	/**
+	 * read a belief state written by save() : see SnapshotReader
+	 * @param context the level of the state, read at the start of the stream
+	 * @param in the buffer to read, positioned at the start of the state : it is positioned after the state on return
+	 */
+	BeliefState(MapContext context, ByteBuffer in) {
+		this(context, 0, 0);
+		this.pacmanPos = context.position(SnapshotReader.readVarint(in));
+		this.pacmanOldPos = context.position(SnapshotReader.readVarint(in));
+		this.score = SnapshotReader.readSignedVarint(in);
+		this.life = SnapshotReader.readSignedVarint(in);
+		this.nbrOfGommes = SnapshotReader.readVarint(in);
+		this.nbrOfSuperGommes = SnapshotReader.readVarint(in);
+		for(int a = 0; a < context.getNbrOfCells(); a++) {//deux bits par case praticable : 1 pour une gomme, 2 pour une super gomme
+			int content = SnapshotReader.getBits(in, a, 2);
+			if(content != 0) {
+				int cell = context.cell(a);
+				this.setCell(cell / context.getMapSize(), cell % context.getMapSize(), content == 1 ? '.' : '*');
+			}
+		}
+		SnapshotReader.skipBits(in, 2 * context.getNbrOfCells());
+		int nbrGhosts = SnapshotReader.readVarint(in);
+		this.ghostPositions = new int[nbrGhosts][];
+		this.ghostKeys = new long[nbrGhosts];
+		this.compteurPeur = new byte[nbrGhosts];
+		for(int k = 0; k < nbrGhosts; k++) {
+			this.compteurPeur[k] = (byte)SnapshotReader.readSignedVarint(in);
+			int[] codes = new int[SnapshotReader.readVarint(in)];
+			for(int index = 0; index < codes.length; index++) {//codes croissants : chacun est ecrit comme son ecart avec le precedent
+				codes[index] = (index == 0 ? 0 : codes[index - 1]) + SnapshotReader.readVarint(in);
+			}
+			this.setGhostPositions(k, codes, codes.length);
 		}
-	}*/
+	}
+	
 	
 	public int compareTo(Object o) {
 		BeliefState bs = (BeliefState) o;
@@ -207,24 +338,26 @@ public class BeliefState implements Comparable{
 		comp = this.nbrOfSuperGommes - bs.nbrOfSuperGommes;
 		if(comp != 0)
 			return comp;
-		for(int[] pos:BeliefState.gamePositions) {
-			comp = this.map[pos[0]][pos[1]] - bs.map[pos[0]][pos[1]];
+		for(int i = 0; i < this.gums.length; i++) {
+			comp = Long.compare(this.gums[i], bs.gums[i]);
+			if(comp != 0)
+				return comp;
+			comp = Long.compare(this.superGums[i], bs.superGums[i]);
 			if(comp != 0)
 				return comp;
 		}
-		for(int i = 0; i < this.compteurPeur.size(); i++) {
-			comp = this.compteurPeur.get(i) - bs.compteurPeur.get(i);
+		for(int i = 0; i < this.compteurPeur.length; i++) {
+			comp = this.compteurPeur[i] - bs.compteurPeur[i];
 			if(comp != 0)
 				return comp;
 		}
-		for(int i = 0; i < this.listPGhost.size(); i++) {
-			TreeSet<Position> posGhost1 = this.listPGhost.get(i), posGhost2 = bs.listPGhost.get(i);
-			comp = posGhost1.size() - posGhost2.size();
+		for(int i = 0; i < this.ghostPositions.length; i++) {
+			int[] posGhost1 = this.ghostPositions[i], posGhost2 = bs.ghostPositions[i];
+			comp = posGhost1.length - posGhost2.length;
 			if(comp != 0)
 				return comp;
-			Iterator<Position> iterPos1 = posGhost1.descendingIterator(), iterPos2 = posGhost2.descendingIterator();
-			for(Position pos1 = iterPos1.next(), pos2 = iterPos2.next(); iterPos1.hasNext(); pos1 = iterPos1.next(), pos2 = iterPos2.next()) {
-				comp = pos1.compareTo(pos2);
+			for(int index = posGhost1.length - 1; index >= 0; index--) {
+				comp = posGhost1[index] - posGhost2[index];
 				if(comp != 0)
 					return comp;
 			}
@@ -233,36 +366,42 @@ public class BeliefState implements Comparable{
 	}
 	
 	/**
-	 * construct a copy of the state
+	 * construct a copy of the state.
+	 * The arrays of the state are shared with the copy (copy-on-write) : each of them is copied by the first of the two states modifying it
 	 * @param toCopy BeliefState object to be copied
 	 * @param isDead if true then Pacman is dead and the status of the status should be updated accordingly
 	 */
 
 	public BeliefState(BeliefState toCopy, boolean isDead) {
-		this(BeliefState.taille, toCopy.score, toCopy.life);
-		this.pacmanPos.dir = toCopy.pacmanPos.dir;
-		for(int i = 0; i < this.map.length; i++) {
-			for(int j = 0; j < this.map[i].length; j++) {
-				this.modifyMap(i, j, toCopy.map[i][j]);
-			}
-		}
-		this.pacmanOldPos = toCopy.pacmanOldPos.clone();
+		this.context = toCopy.context;
+		this.gums = toCopy.gums;
+		this.superGums = toCopy.superGums;
+		this.sharedGums = toCopy.sharedGums = true;
+		this.gumKey = toCopy.gumKey;
+		this.nbrOfGommes = toCopy.nbrOfGommes;
+		this.nbrOfSuperGommes = toCopy.nbrOfSuperGommes;
+		this.score = toCopy.score;
+		this.life = toCopy.life;
+		this.pacmanPos = toCopy.pacmanPos;
+		this.pacmanOldPos = toCopy.pacmanOldPos;
 		if(!isDead) {
-			this.listPGhost.clear();
-			for(TreeSet<Position> listP: toCopy.listPGhost) {
-				TreeSet<Position> newListP = new TreeSet<Position>();
-				for(Position pos: listP.descendingSet()) {
-					newListP.add(pos.clone());
-				}
-				this.listPGhost.add(newListP);
-			}
-			for(int i = 0; i < toCopy.compteurPeur.size(); i++) {
-				this.compteurPeur.set(i, toCopy.compteurPeur.get(i));
+			this.ghostPositions = toCopy.ghostPositions;
+			this.ghostKeys = toCopy.ghostKeys;
+			this.sharedGhosts = toCopy.sharedGhosts = true;
+			this.compteurPeur = toCopy.compteurPeur;
+			this.sharedPeur = toCopy.sharedPeur = true;
+			this.zobristKey = toCopy.zobristKey;
+		}
+		else {//les ghosts retournent sur leur case de depart
+			this.ghostPositions = new int[this.context.getNbrOfGhosts()][];
+			this.ghostKeys = new long[this.ghostPositions.length];
+			this.compteurPeur = new byte[this.ghostPositions.length];
+			for(int k = 0; k < this.ghostPositions.length; k++) {
+				this.setGhostPosition(k, this.context.ghostStart(k));
 			}
-		}
-		else {
 			this.life = toCopy.life - 1;
-			this.moveTo(BeliefState.pacmanYInit / BeliefState.tailleCase, BeliefState.pacmanXInit / BeliefState.tailleCase, 'U');
+			Position start = this.context.pacmanStart();
+			this.moveTo(start.x, start.y, 'U');
 		}
 	}
 
@@ -276,11 +415,11 @@ public class BeliefState implements Comparable{
 		switch(val) {
 		case '.': nbrOfGommes++; break;
 		case '*': nbrOfGommes++; nbrOfSuperGommes++; break;
-		case 'P': this.pacmanPos.x = i;this.pacmanPos.y = j; break;
-		case 'F': TreeSet<Position> posGhost = new TreeSet<Position>(); Position pos = new Position(i, j, 'U'); posGhost.add(pos); this.listPGhost.add(posGhost); this.compteurPeur.add(0);  break;
-		case 'B': this.pacmanPos.x = i;this.pacmanPos.y = j; TreeSet<Position> posGhost2 = new TreeSet<Position>(); Position pos2 = new Position(i, j, 'U'); posGhost2.add(pos2); this.listPGhost.add(posGhost2); this.compteurPeur.add(0); break;
+		case 'P': this.setPacmanPos(this.context.position(i, j, this.pacmanPos.dir)); break;
+		case 'F': this.addGhost(this.context.position(i, j, 'U'));  break;
+		case 'B': this.setPacmanPos(this.context.position(i, j, this.pacmanPos.dir)); this.addGhost(this.context.position(i, j, 'U')); break;
 		}
-		this.map[i][j] = val;
+		this.setCell(i, j, val);
 	}
 
 	/**
@@ -300,83 +439,20 @@ public class BeliefState implements Comparable{
 		BeliefState stateRemoved = null;
 		ArrayList<BeliefState> listAlternativeBeliefState = new ArrayList<BeliefState>();
 		BeliefState currentBeliefState = null;
-		char currentPos = this.map[this.pacmanPos.x][this.pacmanPos.y];
-		switch(toward.charAt(0)) {
-		case 'U': if(pacmanPos.x > 0) {
-			char nextPos = this.map[this.pacmanPos.x - 1][this.pacmanPos.y];
-			if(nextPos != '#') {
-				currentBeliefState = this.move(-1, 0, nextPos, 'U');
-				if(nextPos == '*') {
-					for(int i = 0; i < currentBeliefState.compteurPeur.size(); i++) {
-						currentBeliefState.compteurPeur.set(i, Ghost.TIME_PEUR);
-					}
-				}
-			}
-			else {
-				currentBeliefState = this.move(0, 0, currentPos, 'U');
-			}
-		} else {
-			currentBeliefState = this.move(0, 0, currentPos, 'U');
-		} break;
-		case 'D': if(this.pacmanPos.x + 1 < this.map.length) {
-			char nextPos = this.map[this.pacmanPos.x + 1][this.pacmanPos.y];
-			if(nextPos != '#') {
-				currentBeliefState = this.move(1, 0, nextPos, 'D');
-				if(nextPos == '*') {
-					for(int i = 0; i < currentBeliefState.compteurPeur.size(); i++) {
-						currentBeliefState.compteurPeur.set(i, Ghost.TIME_PEUR);
-					}
-				}
-			}
-			else {
-				currentBeliefState = this.move(0, 0, currentPos, 'D');
-			}
-		}
-		else{
-			currentBeliefState = this.move(0, 0, currentPos, 'D');
-		} break;
-		case 'L': if(this.pacmanPos.y > 0) {
-			char nextPos = this.map[this.pacmanPos.x][this.pacmanPos.y - 1];
-			if(nextPos != '#') {
-				currentBeliefState = this.move(0, -1, nextPos, 'L');
-				if(nextPos == '*') {
-					for(int i = 0; i < currentBeliefState.compteurPeur.size(); i++) {
-						currentBeliefState.compteurPeur.set(i, Ghost.TIME_PEUR);
-					}
-				}
-			}
-			else {
-				currentBeliefState = this.move(0, 0, currentPos, 'L');
-			}
-		}
-		else{
-			currentBeliefState = this.move(0, 0, currentPos, 'L');
-		} break;
-		case 'R': if(this.pacmanPos.y + 1 < this.map[0].length) {
-			char nextPos = this.map[this.pacmanPos.x][this.pacmanPos.y + 1];
-			if(nextPos != '#') {
-				currentBeliefState = this.move(0, 1, nextPos, 'R');
-				if(nextPos == '*') {
-					for(int i = 0; i < currentBeliefState.compteurPeur.size(); i++) {
-						currentBeliefState.compteurPeur.set(i, Ghost.TIME_PEUR);
-					}
-				}
-			}
-			else {
-				currentBeliefState = this.move(0, 0, currentPos, 'R');
-			}
+		char move = toward.charAt(0);
+		int next = this.context.neighbour(this.pacmanPos.x * this.context.getMapSize() + this.pacmanPos.y, Position.DIRECTIONS.indexOf(move));
+		if(next != -1) {//la case visee n'est pas un mur
+			currentBeliefState = this.move(next / this.context.getMapSize() - this.pacmanPos.x, next % this.context.getMapSize() - this.pacmanPos.y, this.getMap(next / this.context.getMapSize(), next % this.context.getMapSize()), move);
 		}
 		else {
-			currentBeliefState = this.move(0, 0, currentPos, 'R');
-		} break;
+			currentBeliefState = this.move(0, 0, this.getMap(this.pacmanPos.x, this.pacmanPos.y), move);
 		}
 
 		boolean dead = false;
 		int l = 0;
-		for(TreeSet<Position> treeSet: this.listPGhost) {//test pour chaque ghost si il se trouve sur la case de PacMan et qu'il n'a pas peur (en gros PacMan mort)
-			if(currentBeliefState.compteurPeur.get(l++) == 0 && treeSet.size() == 1) {//ghost n'a pas peur et une seule position possible
-				Position pos = treeSet.first();
-				if(pos.x == currentBeliefState.pacmanPos.x && pos.y == currentBeliefState.pacmanPos.y) {//si le PacMan s'est deplace a la place du ghost
+		for(int[] posGhost: this.ghostPositions) {//test pour chaque ghost si il se trouve sur la case de PacMan et qu'il n'a pas peur (en gros PacMan mort)
+			if(currentBeliefState.compteurPeur[l++] == 0 && posGhost.length == 1) {//ghost n'a pas peur et une seule position possible
+				if(posGhost[0] >> 2 == currentBeliefState.pacmanPos.x * this.context.getMapSize() + currentBeliefState.pacmanPos.y) {//si le PacMan s'est deplace a la place du ghost
 					dead = true;//le PacMan est mort
 					break;
 				}
@@ -387,505 +463,97 @@ public class BeliefState implements Comparable{
 		}
 		else {
 			listAlternativeBeliefState.add(currentBeliefState);
-			for(int k = 0; k < currentBeliefState.compteurPeur.size(); k++) {//pour chaque fantome
-				ArrayList<BeliefState> tempListAlternativeBeliefState = new ArrayList<BeliefState>();
+			//tous les etats ont les memes positions possibles pour le ghost traite (celles de l'etat en cours) : au plus trois deplacements par position possible
+			int maxPositions = 0;
+			for(int[] posGhost: currentBeliefState.ghostPositions) {
+				maxPositions = Math.max(maxPositions, posGhost.length);
+			}
+			int[] newCodes = new int[3 * maxPositions];//positions possibles du ghost apres son deplacement, dans l'etat en cours
+			int[] alternativeCodes = new int[3 * maxPositions];//position du ghost dans chacun des etats crees a partir de l'etat en cours
+			ArrayList<BeliefState> tempListAlternativeBeliefState = new ArrayList<BeliefState>();//etats crees pour le ghost traite, ajoutes a la liste apres lui
+			for(int k = 0; k < currentBeliefState.compteurPeur.length; k++) {//pour chaque fantome
 
 				for(int indexBeliefState = 0; indexBeliefState < listAlternativeBeliefState.size(); indexBeliefState++) {//pour chaque BeliefState deja trouve
 					BeliefState state = listAlternativeBeliefState.get(indexBeliefState); 
-					int compteurPeur = state.compteurPeur.get(k);
+					int compteurPeur = state.compteurPeur[k];
 					if (compteurPeur > 0) {//decremente le compteur de peur
-						state.compteurPeur.set(k, compteurPeur - 2);
+						state.setCompteurPeur(k, compteurPeur - 2);
 					}
-					TreeSet<Position> posGhost = state.listPGhost.get(k), newPosGhost = new TreeSet<Position>();
-					Iterator<Position> itPos = posGhost.iterator();
-					HashSet<String> hAlternativePos = new HashSet<String>();
-					while(itPos.hasNext()) {//pour chauqe position possible du ghost
-						Position posG = itPos.next();
-						boolean haveMoved = false;
-						if(BeliefState.isVisible(posG.x, posG.y, this.pacmanPos.x, this.pacmanPos.y) && compteurPeur == 0) {//si le ghost est visible et n'est pas effraye
-							/*if(posGhost.size() > 1) {
-								Position newPos = posG.clone();
-								BeliefState actualBeliefState = new BeliefState(state, false);
-								actualBeliefState.listPGhost.get(k).clear();
-								boolean isDead = false;
-								if(newPos.x > state.pacmanPos.x) {
-									newPos.x--;
-									newPos.dir = 'U';
-									if(newPos.x == state.pacmanPos.x)
-										isDead = true;
-								}
-								else {
-									if(newPos.x < state.pacmanPos.x) {
-										newPos.x++;
-										newPos.dir = 'D';
-										if(newPos.x == state.pacmanPos.x)
-											isDead = true;
-									}
-									else {
-										if(newPos.y < state.pacmanPos.y) {
-											newPos.y++;
-											newPos.dir = 'R';
-											if(newPos.y == state.pacmanPos.y)
-												isDead = true;
-										}
-										else {
-											if(newPos.y > state.pacmanPos.y) {
-												newPos.y--;
-												newPos.dir = 'L';
-												if(newPos.y == state.pacmanPos.y)
-													isDead = true;
-											}
-											else
-												isDead = true;
-										}
-									}
-								}
-								if(isDead) {
-									if(stateRemoved == null)
-										stateRemoved = new BeliefState(actualBeliefState, true);
-								}
-								else {
-									actualBeliefState.listPGhost.get(k).add( newPos.clone());
-									if(!hAlternativePos.contains(newPos.toString())) {
-										tempListAlternativeBeliefState.add(actualBeliefState);
-										hAlternativePos.add(newPos.toString());
-									}
-								}
+					int[] posGhost = state.ghostPositions[k];
+					int nbrNewCodes = 0, nbrAlternatives = 0;
+					for(int code: posGhost) {//pour chaque position possible du ghost
+						Position posG = this.context.position(code);
+						if(this.context.isVisible(posG.x, posG.y, this.pacmanPos.x, this.pacmanPos.y) && compteurPeur == 0) {//si le ghost est visible et n'est pas effraye
+							Position newPos;
+							if(posG.x > this.pacmanPos.x) {//le ghost effectue son mouvement dans la direction de Pacman
+								newPos = this.context.position(posG.x - 1, posG.y, 'U');
 							}
-							else {*/
-								Position newPos = posG.clone();
-								if(newPos.x > this.pacmanPos.x) {//le ghost effectue son mouvement dans la direction de Pacman
-									newPos.x--;
-									newPos.dir = 'U';
+							else {
+								if(posG.x < this.pacmanPos.x) {
+									newPos = this.context.position(posG.x + 1, posG.y, 'D');
 								}
 								else {
-									if(newPos.x < this.pacmanPos.x) {
-										newPos.x++;
-										newPos.dir = 'D';
+									if(posG.y < this.pacmanPos.y) {
+										newPos = this.context.position(posG.x, posG.y + 1, 'R');
 									}
 									else {
-										if(newPos.y < this.pacmanPos.y) {
-											newPos.y++;
-											newPos.dir = 'R';
-										}
-										else {
-											newPos.y--;
-											newPos.dir = 'L';
-										}
+										newPos = this.context.position(posG.x, posG.y - 1, 'L');
 									}
 								}
-								if(newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) {//si apres deplacement le ghost se trouve sur la meme case que Pacman
-									if(stateRemoved == null)
-										stateRemoved = new BeliefState(state, true);//cree un etat ou Pacman est mort
-								}
-								else{
-									newPosGhost.add(newPos);
-								}
-							//}
-							haveMoved = true;//le ghost s'est deplace
-						}
-						else {//si le ghost n'est pas visible ou qu'il a peur
-							ArrayList<Position> caseAround =  new ArrayList<Position>();//on regarde quelles sont les mouvement possibles pour le ghost
-							boolean rightAvailable = false, leftAvailable = false, upAvailable = false, downAvailable = false;
-							if(posG.x > 0 && state.map[posG.x - 1][posG.y] != '#') {
-								caseAround.add(new Position(posG.x - 1, posG.y, 'U'));
-								upAvailable = true;
 							}
-							if(posG.x + 1 < state.map.length && state.map[posG.x + 1][posG.y] != '#') {
-								caseAround.add(new Position(posG.x + 1, posG.y, 'D'));
-								downAvailable = true;
+							if(newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) {//si apres deplacement le ghost se trouve sur la meme case que Pacman
+								if(stateRemoved == null)
+									stateRemoved = new BeliefState(state, true);//cree un etat ou Pacman est mort
 							}
-							if(posG.y > 0 && state.map[posG.x][posG.y - 1] != '#') {
-								caseAround.add(new Position(posG.x, posG.y - 1, 'L'));
-								leftAvailable = true;
-							}
-							if(posG.y + 1 < state.map[0].length && state.map[posG.x][posG.y + 1] != '#') {
-								caseAround.add(new Position(posG.x, posG.y + 1, 'R'));
-								rightAvailable = true;
-							}
-
-							switch (posG.dir) {
-							case 'U' :
-								if (leftAvailable || rightAvailable) {
-									if(downAvailable) {
-										caseAround.remove(upAvailable?1:0);
-									}
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								} else if (!upAvailable) {
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								}
-								break;
-							case 'D' :
-								if (leftAvailable || rightAvailable) {
-									if(upAvailable) {
-										caseAround.remove(0);
-									}
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								} else if (!downAvailable) {
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								}
-								break;
-							case 'L' :
-								if (upAvailable || downAvailable) {
-									if(rightAvailable) {
-										caseAround.remove((upAvailable?1:0)+(downAvailable?1:0)+(leftAvailable?1:0));
-
-									}
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								} else if (!leftAvailable) {
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								}
-								break;
-							case 'R' :
-								if (upAvailable || downAvailable) {
-									if(leftAvailable) {
-										caseAround.remove((upAvailable?1:0)+(downAvailable?1:0));
-									}
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								} else if (!rightAvailable) {
-									for(Position newPos: caseAround) {
-										if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-											if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
-												if(stateRemoved == null)
-													stateRemoved = new BeliefState(state, true);
-											}
-											else {//si le ghost etait dans un etat de peur alors il a ete mange
-												newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.compteurPeur.set(k, 0);
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												actualBeliefState.score += Ghost.SCORE_FANTOME;
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-										}
-										else {
-											if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
-												BeliefState actualBeliefState = new BeliefState(state, false);
-												actualBeliefState.listPGhost.get(k).clear();
-												actualBeliefState.listPGhost.get(k).add(newPos);
-												if(!hAlternativePos.contains(newPos.toString())) {
-													tempListAlternativeBeliefState.add(actualBeliefState);
-													hAlternativePos.add(newPos.toString());
-												}
-											}
-											else {
-												newPosGhost.add(newPos);
-											}
-										}
-									}
-									haveMoved = true;
-								}
-								break;
-							}	
-						}									
-						if (!haveMoved) {
-							Position newPos = posG.clone();
-							switch(posG.dir) {
-							case 'U': newPos.x--; break;
-							case 'D': newPos.x++; break;
-							case 'L': newPos.y--; break;
-							case 'R': newPos.y++; break;
+							else{
+								newCodes[nbrNewCodes++] = this.context.code(newPos);
 							}
-							if(compteurPeur > 0) {//si le ghost est en etat de peur
-								if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//si il se trouve sur la meme case que Pacman ou si ils se sont croises
-									newPos = new Position(BeliefState.listPGhostInit.get(k)[1] / BeliefState.tailleCase, BeliefState.listPGhostInit.get(k)[0] / BeliefState.tailleCase,'U');//le ghost a ete mange
-									BeliefState actualBeliefState = new BeliefState(state, false);
-									actualBeliefState.listPGhost.get(k).clear();
-									actualBeliefState.compteurPeur.set(k, 0);
-									actualBeliefState.listPGhost.get(k).add(newPos);
-									actualBeliefState.score += Ghost.SCORE_FANTOME;
-									if(!hAlternativePos.contains(newPos.toString())) {
-										tempListAlternativeBeliefState.add(actualBeliefState);
-										hAlternativePos.add(newPos.toString());
-									}
+							continue;
+						}
+						for(int m = 0; m < this.context.nbrGhostMoves(code); m++) {//si le ghost n'est pas visible ou qu'il a peur, il erre (voir Map.computeMoves())
+							int newCode = this.context.ghostMove(code, m);
+							Position newPos = this.context.position(newCode);
+							if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
+								if(compteurPeur == 0) {//si le ghost n'etait pas dans un etat de peur alors Pacman est mort
+									if(stateRemoved == null)
+										stateRemoved = new BeliefState(state, true);
 								}
-								else {
-									if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
+								else {//si le ghost etait dans un etat de peur alors il a ete mange
+									newPos = this.context.ghostStart(k);
+									if(BeliefState.indexOf(alternativeCodes, nbrAlternatives, this.context.code(newPos)) == -1) {
 										BeliefState actualBeliefState = new BeliefState(state, false);
-										actualBeliefState.listPGhost.get(k).clear();
-										actualBeliefState.listPGhost.get(k).add(newPos);
-										if(!hAlternativePos.contains(newPos.toString())) {
-											tempListAlternativeBeliefState.add(actualBeliefState);
-											hAlternativePos.add(newPos.toString());
-										}
-									}
-									else {
-										newPosGhost.add(newPos);
+										actualBeliefState.setCompteurPeur(k, 0);
+										actualBeliefState.setGhostPosition(k, newPos);
+										actualBeliefState.addScore(Ghost.SCORE_FANTOME);
+										tempListAlternativeBeliefState.add(actualBeliefState);
+										alternativeCodes[nbrAlternatives++] = this.context.code(newPos);
 									}
 								}
 							}
 							else {
-								if((newPos.x == state.pacmanPos.x && newPos.y == state.pacmanPos.y) || (posG.x == state.pacmanPos.x && posG.y == state.pacmanPos.y && newPos.x == this.pacmanPos.x && newPos.y == this.pacmanPos.y)) {//soit le ghost se retrouve sur la case du Pacman, soit le ghost et le Pacman se sont croises
-									if(stateRemoved == null)
-										stateRemoved = new BeliefState(state, true);
-								}
-								else {
-									if(BeliefState.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {
+								if(this.context.isVisible(newPos.x, newPos.y, state.pacmanPos.x, state.pacmanPos.y)) {//le ghost devient visible : sa position est connue dans un nouvel etat
+									if(BeliefState.indexOf(alternativeCodes, nbrAlternatives, newCode) == -1) {
 										BeliefState actualBeliefState = new BeliefState(state, false);
-										actualBeliefState.listPGhost.get(k).clear();
-										actualBeliefState.listPGhost.get(k).add(newPos);
-										if(!hAlternativePos.contains(newPos.toString())) {
-											tempListAlternativeBeliefState.add(actualBeliefState);
-											hAlternativePos.add(newPos.toString());
-										}
-									}
-									else {
-										newPosGhost.add(newPos);
+										actualBeliefState.setGhostPosition(k, newPos);
+										tempListAlternativeBeliefState.add(actualBeliefState);
+										alternativeCodes[nbrAlternatives++] = newCode;
 									}
 								}
+								else {
+									newCodes[nbrNewCodes++] = newCode;
+								}
 							}
 						}
 					}
-					if(newPosGhost.isEmpty()) {
+					if(nbrNewCodes == 0) {
 						listAlternativeBeliefState.remove(indexBeliefState--);
 					}
 					else {
-						state.listPGhost.set(k, newPosGhost);
+						state.setGhostPositions(k, newCodes, nbrNewCodes);
 					}
 				}
 				listAlternativeBeliefState.addAll(tempListAlternativeBeliefState);
+				tempListAlternativeBeliefState.clear();
 			}
 			if(stateRemoved != null) {
 				listAlternativeBeliefState.add(stateRemoved);
@@ -894,6 +562,24 @@ public class BeliefState implements Comparable{
 		return new Result(listAlternativeBeliefState);
 	}
 
+	/**
+	 * return a copy of the state in which the position of each ghost is drawn uniformly among its possible positions
+	 * @param random the random generator used to draw the positions
+	 * @return the state itself if each ghost has a single possible position, a copy with a single position per ghost otherwise
+	 */
+	public BeliefState sample(Random random) {
+		BeliefState sampled = this;
+		for(int k = 0; k < this.ghostPositions.length; k++) {
+			int[] posGhost = this.ghostPositions[k];
+			if(posGhost.length > 1) {
+				if(sampled == this)
+					sampled = new BeliefState(this, false);
+				sampled.setGhostPosition(k, this.context.position(posGhost[random.nextInt(posGhost.length)]));
+			}
+		}
+		return sampled;
+	}
+
 	/**
 	 * create all possible states resulting from all possible actions of Pacman
 	 * @return a plan, which is a list of belief states, on per set of actions resulting to the same belief states
@@ -903,48 +589,14 @@ public class BeliefState implements Comparable{
 		if(this.life <= 0)
 			return plans;
 		ArrayList<String> listNull = new ArrayList<String>();
-		if(pacmanPos.x > 0) {
-			char nextPos = this.map[this.pacmanPos.x - 1][this.pacmanPos.y];
-			if(nextPos != '#') {
-				ArrayList<String> listUp = new ArrayList<String>();
-				listUp.add(PacManLauncher.UP);
-				plans.addPlan(this.extendsBeliefState(PacManLauncher.UP), listUp);
-			}
-			else {
-				listNull.add(PacManLauncher.UP);
-			}
-		}
-		if(this.pacmanPos.x + 1 < this.map.length) {
-			char nextPos = this.map[this.pacmanPos.x + 1][this.pacmanPos.y];
-			if(nextPos != '#') {
-				ArrayList<String> listDown = new ArrayList<String>();
-				listDown.add(PacManLauncher.DOWN);
-				plans.addPlan(this.extendsBeliefState(PacManLauncher.DOWN), listDown);
+		for(String toward: BeliefState.MOVES) {
+			if(this.canMove(toward)) {
+				ArrayList<String> listMove = new ArrayList<String>();
+				listMove.add(toward);
+				plans.addPlan(this.extendsBeliefState(toward), listMove);
 			}
 			else {
-				listNull.add(PacManLauncher.DOWN);
-			}
-		}
-		if(this.pacmanPos.y > 0) {
-			char nextPos = this.map[this.pacmanPos.x][this.pacmanPos.y - 1];
-			if(nextPos != '#') {
-				ArrayList<String> listLeft = new ArrayList<String>();
-				listLeft.add(PacManLauncher.LEFT);
-				plans.addPlan(this.extendsBeliefState(PacManLauncher.LEFT), listLeft);
-			}
-			else {
-				listNull.add(PacManLauncher.LEFT);
-			}
-		}
-		if(this.pacmanPos.y + 1 < this.map[0].length) {
-			char nextPos = this.map[this.pacmanPos.x][this.pacmanPos.y + 1];
-			if(nextPos != '#') {
-				ArrayList<String> listRight = new ArrayList<String>();
-				listRight.add(PacManLauncher.RIGHT);
-				plans.addPlan(this.extendsBeliefState(PacManLauncher.RIGHT), listRight);
-			}
-			else {
-				listNull.add(PacManLauncher.RIGHT);
+				listNull.add(toward);
 			}
 		}
 		if(listNull.size() > 0)
@@ -953,24 +605,49 @@ public class BeliefState implements Comparable{
 	}
 
 	/**
-	 * remove from a list of states all the states where a given ghost is not (possibly) at a given position provided as input
+	 * tell whether Pacman can move in a direction, read in the table of neighbours of the level
+	 * @param toward the move (PacManLauncher.UP, DOWN, LEFT or RIGHT)
+	 * @return true if the square reached by the move is not a wall
+	 */
+	boolean canMove(String toward) {
+		return this.context.neighbour(this.pacmanPos.x * this.context.getMapSize() + this.pacmanPos.y, Position.DIRECTIONS.indexOf(toward.charAt(0))) != -1;
+	}
+
+	/**
+	 * remove from a list of states, in a single pass, all the states where one of the ghosts can not be at its observed position.
+	 * The states kept are moved to the beginning of the list, in the same order. The observation should match at least one state :
+	 * if it matches none of them, the last one is kept anyway
 	 * @param listBeliefState list of state to be updated
-	 * @param gId Id of the ghost
-	 * @param posG actual position of the ghost
+	 * @param posGhosts actual position of each ghost (see getPGhosts())
+	 * @return the number of states removed from the list
 	 */
-	public static void filter(ArrayList<BeliefState> listBeliefState, int gId, Position posG) {
-		ArrayList<BeliefState> copy = (ArrayList<BeliefState>)listBeliefState.clone();
-		for(int i = 0; i < listBeliefState.size(); i++) {
+	public static int filter(ArrayList<BeliefState> listBeliefState, Position[] posGhosts) {
+		int size = listBeliefState.size();
+		int kept = 0;
+		for(int i = 0; i < size; i++) {
 			BeliefState state = listBeliefState.get(i);
-			if(!state.listPGhost.get(gId).contains(posG)) {
-				if(listBeliefState.size() == 1)
-					System.out.println("problem");
-				else {
-					listBeliefState.remove(i);
-					i--;
-				}
-			}
+			if(state.matches(posGhosts))
+				listBeliefState.set(kept++, state);
 		}
+		if(kept == 0 && size > 0) {
+			System.out.println("problem");
+			listBeliefState.set(kept++, listBeliefState.get(size - 1));
+		}
+		listBeliefState.subList(kept, size).clear();
+		return size - kept;
+	}
+
+	/**
+	 * tell whether each ghost can be at its observed position in this state
+	 * @param posGhosts actual position of each ghost
+	 * @return true if the observed position of each ghost is one of its possible positions
+	 */
+	private boolean matches(Position[] posGhosts) {
+		for(int k = 0; k < posGhosts.length; k++) {
+			if(Arrays.binarySearch(this.ghostPositions[k], this.context.code(posGhosts[k])) < 0)
+				return false;
+		}
+		return true;
 	}
 
 	/**
@@ -983,28 +660,26 @@ public class BeliefState implements Comparable{
 	 */
 	public BeliefState move(int i, int j, char nextPos, char move) {
 		BeliefState nextBeliefState = new BeliefState(this, false);
-		if(nextBeliefState.map[nextBeliefState.pacmanPos.x][nextBeliefState.pacmanPos.y] == 'B')
-			nextBeliefState.map[nextBeliefState.pacmanPos.x][nextBeliefState.pacmanPos.y] = 'F';
+		if(nextBeliefState.getMap(nextBeliefState.pacmanPos.x, nextBeliefState.pacmanPos.y) == 'B')
+			nextBeliefState.setCell(nextBeliefState.pacmanPos.x, nextBeliefState.pacmanPos.y, 'F');
 		else
-			nextBeliefState.map[nextBeliefState.pacmanPos.x][nextBeliefState.pacmanPos.y] = 'O';
-		nextBeliefState.pacmanPos.x += i;
-		nextBeliefState.pacmanPos.y += j;
-		nextBeliefState.pacmanPos.dir = move;
+			nextBeliefState.setCell(nextBeliefState.pacmanPos.x, nextBeliefState.pacmanPos.y, 'O');
+		nextBeliefState.setPacmanPos(this.context.position(nextBeliefState.pacmanPos.x + i, nextBeliefState.pacmanPos.y + j, move));
 		if(nextPos == '*' || nextPos == '.') {
 			nextBeliefState.nbrOfGommes--;
-			nextBeliefState.score += Gomme.SCORE_GOMME;
+			nextBeliefState.addScore(Gomme.SCORE_GOMME);
 			if(nextPos == '*') {
 				nextBeliefState.nbrOfSuperGommes--;
-				for(int k = 0; k < nextBeliefState.compteurPeur.size(); k++) {
-					nextBeliefState.compteurPeur.set(k, Ghost.TIME_PEUR);
+				for(int k = 0; k < nextBeliefState.compteurPeur.length; k++) {
+					nextBeliefState.setCompteurPeur(k, Ghost.TIME_PEUR);
 				}
 			}
 		}
-		if(nextBeliefState.map[nextBeliefState.pacmanPos.x][nextBeliefState.pacmanPos.y] == 'F')
-			nextBeliefState.map[nextBeliefState.pacmanPos.x][nextBeliefState.pacmanPos.y] = 'B';
+		if(nextBeliefState.getContent(nextBeliefState.pacmanPos.x, nextBeliefState.pacmanPos.y) == 'F')
+			nextBeliefState.setCell(nextBeliefState.pacmanPos.x, nextBeliefState.pacmanPos.y, 'B');
 		else
-			nextBeliefState.map[nextBeliefState.pacmanPos.x][nextBeliefState.pacmanPos.y] = 'P';
-		nextBeliefState.pacmanOldPos = this.pacmanPos.clone();
+			nextBeliefState.setCell(nextBeliefState.pacmanPos.x, nextBeliefState.pacmanPos.y, 'P');
+		nextBeliefState.pacmanOldPos = this.pacmanPos;
 		return nextBeliefState;
 	}
 
@@ -1016,42 +691,39 @@ public class BeliefState implements Comparable{
 	 * @return true if Pacman is dead after performing the move
 	 */
 	public boolean move(int i, int j, char move) {
-		this.pacmanOldPos = this.pacmanPos.clone();
-		if(this.map[this.pacmanPos.x + i][this.pacmanPos.y + j] != '#') {
-			if(this.map[this.pacmanPos.x][this.pacmanPos.y] == 'B')
-				this.map[this.pacmanPos.x][this.pacmanPos.y] = 'F';
+		this.pacmanOldPos = this.pacmanPos;
+		if(this.getMap(this.pacmanPos.x + i, this.pacmanPos.y + j) != '#') {
+			if(this.getMap(this.pacmanPos.x, this.pacmanPos.y) == 'B')
+				this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'F');
 			else
-				this.map[this.pacmanPos.x][this.pacmanPos.y] = 'O';
-			this.pacmanPos.x += i;
-			this.pacmanPos.y += j;
-			this.pacmanPos.dir = move;
+				this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'O');
+			this.setPacmanPos(this.context.position(this.pacmanPos.x + i, this.pacmanPos.y + j, move));
 			int l = 0;
-			char nextPos = this.map[this.pacmanPos.x][this.pacmanPos.y];
+			char nextPos = this.getContent(this.pacmanPos.x, this.pacmanPos.y);
 			if(nextPos != 'O' && nextPos != 'F') {
 				this.nbrOfGommes--;
-				this.score += Gomme.SCORE_GOMME;
+				this.addScore(Gomme.SCORE_GOMME);
 				if(nextPos == '*') {
 					this.nbrOfSuperGommes--;
-					for(int k = 0; k < this.compteurPeur.size(); k++) {
-						this.compteurPeur.set(k, Ghost.TIME_PEUR);
+					for(int k = 0; k < this.compteurPeur.length; k++) {
+						this.setCompteurPeur(k, Ghost.TIME_PEUR);
 					}
 				}
 			}
 			if(nextPos == 'F')
-				this.map[this.pacmanPos.x][this.pacmanPos.y] = 'B';
+				this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'B');
 			else
-				this.map[this.pacmanPos.x][this.pacmanPos.y] = 'P';
-			for(TreeSet<Position> treeSet: this.listPGhost) {
-				if(this.compteurPeur.get(l++) == 0 && treeSet.size() == 1) {
-					Position pos = treeSet.first();
-					if(pos.x == this.pacmanPos.x && pos.y == this.pacmanPos.y) {
+				this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'P');
+			for(int[] posGhost: this.ghostPositions) {
+				if(this.compteurPeur[l++] == 0 && posGhost.length == 1) {
+					if(posGhost[0] >> 2 == this.pacmanPos.x * this.context.getMapSize() + this.pacmanPos.y) {
 						return true;
 					}
 				}
 			}
 		}
 		else {
-			this.pacmanPos.dir = move;
+			this.setPacmanPos(this.context.position(this.pacmanPos.x, this.pacmanPos.y, move));
 		}
 		return false;
 	}
@@ -1063,18 +735,16 @@ public class BeliefState implements Comparable{
 	 * @param move direction of the pacman
 	 */
 	public void moveTo(int i, int j, char move) {
-		if(this.map[this.pacmanPos.x][this.pacmanPos.y] == 'B')
-			this.map[this.pacmanPos.x][this.pacmanPos.y] = 'F';
+		if(this.getMap(this.pacmanPos.x, this.pacmanPos.y) == 'B')
+			this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'F');
 		else
-			this.map[this.pacmanPos.x][this.pacmanPos.y] = 'O';
-		this.pacmanPos.x = i;
-		this.pacmanPos.y = j;
-		this.pacmanPos.dir = move;
-		if(this.map[this.pacmanPos.x][this.pacmanPos.y] == 'F')
-			this.map[this.pacmanPos.x][this.pacmanPos.y] = 'B';
+			this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'O');
+		this.setPacmanPos(this.context.position(i, j, move));
+		if(this.getContent(this.pacmanPos.x, this.pacmanPos.y) == 'F')
+			this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'B');
 		else
-			this.map[this.pacmanPos.x][this.pacmanPos.y] = 'P';
-		this.pacmanOldPos = this.pacmanPos.clone();
+			this.setCell(this.pacmanPos.x, this.pacmanPos.y, 'P');
+		this.pacmanOldPos = this.pacmanPos;
 	}
 
 	/**
@@ -1086,46 +756,40 @@ public class BeliefState implements Comparable{
 	 * @return true if the move performed by the ghost kill Pacman
 	 */
 	public int moveGhost(int i, int j, int k, char dir) {
-		Position posGhost = this.listPGhost.get(k).first();
+		Position posGhost = this.getPGhost(k);
 
-		int compteurPeur = this.compteurPeur.get(k);
-		Position posPcopy = this.pacmanPos.clone();
-		switch(posPcopy.dir) {
-		case 'U': posPcopy.x++; break;
-		case 'D': posPcopy.x--; break;
-		case 'L': posPcopy.y++; break;
-		case 'R': posPcopy.y--; break;
+		int compteurPeur = this.compteurPeur[k];
+		int posPcopyX = this.pacmanPos.x, posPcopyY = this.pacmanPos.y;//case precedente de Pacman
+		switch(this.pacmanPos.dir) {
+		case 'U': posPcopyX++; break;
+		case 'D': posPcopyX--; break;
+		case 'L': posPcopyY++; break;
+		case 'R': posPcopyY--; break;
 		}
 		if(compteurPeur > 0) {//si le ghost est en etat de peur
-			if((posGhost.x + i == this.pacmanPos.x && posGhost.y + j == this.pacmanPos.y) || (posGhost.x == this.pacmanPos.x && posGhost.y == this.pacmanPos.y && posPcopy.x == posGhost.x + i && posPcopy.y == posGhost.y + j)) {//si le ghost et le Pacman se sont croise ou que le ghost va sur la case du Pacman
-				int[] initPosG = BeliefState.listPGhostInit.get(k);//le ghost est mange
-				this.moveGhostTo(initPosG[1] /  BeliefState.tailleCase, initPosG[0] / BeliefState.tailleCase, k, 'U');
-				this.score += Ghost.SCORE_FANTOME;
+			if((posGhost.x + i == this.pacmanPos.x && posGhost.y + j == this.pacmanPos.y) || (posGhost.x == this.pacmanPos.x && posGhost.y == this.pacmanPos.y && posPcopyX == posGhost.x + i && posPcopyY == posGhost.y + j)) {//si le ghost et le Pacman se sont croise ou que le ghost va sur la case du Pacman
+				Position initPosG = this.context.ghostStart(k);//le ghost est mange
+				this.moveGhostTo(initPosG.x, initPosG.y, k, 'U');
+				this.addScore(Ghost.SCORE_FANTOME);
 				return -1;
 			}			
-			this.compteurPeur.set(k, compteurPeur - 2);
-			this.listPGhost.get(k).clear();
-			posGhost.x += i;
-			posGhost.y += j;
-			posGhost.dir = dir;
-			this.listPGhost.get(k).add(posGhost);
+			this.setCompteurPeur(k, compteurPeur - 2);
+			this.setGhostPosition(k, this.context.position(posGhost.x + i, posGhost.y + j, dir));
 			return 0;
 		}
 		else {//si le ghost n'est pas en etat de peur
-			if((posGhost.x + i == this.pacmanPos.x && posGhost.y + j == this.pacmanPos.y) || (posGhost.x == this.pacmanPos.x && posGhost.y == this.pacmanPos.y && posPcopy.x == posGhost.x + i && posPcopy.y == posGhost.y + j)) {//si le ghost et le Pacman se sont croise ou que le ghost va sur la case du Pacman
+			if((posGhost.x + i == this.pacmanPos.x && posGhost.y + j == this.pacmanPos.y) || (posGhost.x == this.pacmanPos.x && posGhost.y == this.pacmanPos.y && posPcopyX == posGhost.x + i && posPcopyY == posGhost.y + j)) {//si le ghost et le Pacman se sont croise ou que le ghost va sur la case du Pacman
 				this.life--;//alors Pacman meurt
-				this.moveTo(BeliefState.pacmanYInit / BeliefState.tailleCase, BeliefState.pacmanXInit / BeliefState.tailleCase, 'U');
-				for(int l = 0; l < BeliefState.listPGhostInit.size(); l++) {
-					int[] initPosG = BeliefState.listPGhostInit.get(l);
-					this.moveGhostTo(initPosG[1] / BeliefState.tailleCase, initPosG[0] / BeliefState.tailleCase, l, 'U');
+				this.zobristKey = 0;
+				Position start = this.context.pacmanStart();
+				this.moveTo(start.x, start.y, 'U');
+				for(int l = 0; l < this.context.getNbrOfGhosts(); l++) {
+					Position initPosG = this.context.ghostStart(l);
+					this.moveGhostTo(initPosG.x, initPosG.y, l, 'U');
 				}
 				return 1;
 			}
-			this.listPGhost.get(k).clear();
-			posGhost.x += i;
-			posGhost.y += j;
-			posGhost.dir = dir;
-			this.listPGhost.get(k).add(posGhost);
+			this.setGhostPosition(k, this.context.position(posGhost.x + i, posGhost.y + j, dir));
 			return 0;
 		}
 	}
@@ -1138,77 +802,56 @@ public class BeliefState implements Comparable{
 	 * @param dir direction followed by the ghost ('U', 'D', 'L', 'R')
 	 */
 	public void moveGhostTo(int i, int j, int k, char dir) {
-		Position posGhost = this.listPGhost.get(k).first();
-		this.listPGhost.get(k).clear();
-		posGhost.x = i;
-		posGhost.y = j;
-		this.compteurPeur.set(k, 0);
-		posGhost.dir = dir;
-		this.listPGhost.get(k).add(/*posGhost.toString(),*/ posGhost);
+		this.setCompteurPeur(k, 0);
+		this.setGhostPosition(k, this.context.position(i, j, dir));
 	}
 
 	public String toString() {
 		String s = new String();
-		for(int i = 0; i < this.map.length; i++) {
-			for(int j = 0; j < this.map[0].length; j++) {
-				s += this.map[i][j];
+		for(int i = 0; i < this.context.getMapSize(); i++) {
+			for(int j = 0; j < this.context.getMapSize(); j++) {
+				s += this.getMap(i, j);
 			}
 			s += '\n';
 		}
 		s += "Pacman (" + this.pacmanPos.x + ", " + this.pacmanPos.y + ", " + this.pacmanPos.dir + ") "+ this.score +"\n";
-		for(int i = 0; i < this.listPGhost.size(); i++) {
-			s += "Ghost " + i + " (" + this.listPGhost.get(i).size() + ") [" + this.compteurPeur.get(i) + "]";
-			Iterator<Position> itPos = this.listPGhost.get(i).iterator();
-			while(itPos.hasNext()) {
-				Position posG = itPos.next();
+		for(int i = 0; i < this.ghostPositions.length; i++) {
+			s += "Ghost " + i + " (" + this.ghostPositions[i].length + ") [" + this.compteurPeur[i] + "]";
+			for(int code: this.ghostPositions[i]) {
+				Position posG = this.context.position(code);
 				s += "(" + posG.x + ", " + posG.y + ") " + posG.dir + " ";
 			}
 			s += "\n";
 		}
-		return s + "distanceMinToGum= " + this.distanceMinToGum() + "\n";
+		return s + "distanceToNearestGum= " + this.distanceToNearestGum() + "\n";
 	}
 	
-	/*private static HashSet<String> visible;*/
-	
-	/*public void save(PrintStream out) {
-		out.println(BeliefState.taille);
-		for(int i = 0; i < this.map.length; i++) {
-			for(int j = 0; j < this.map[0].length; j++) {
-				out.print(this.map[i][j]);
-			}
-			out.println("");
-		}
-		out.println(this.pacmanPos.x);
-		out.println(this.pacmanPos.y);
-		out.println(BeliefState.pacmanXInit);
-		out.println(BeliefState.pacmanYInit);
-		out.println(BeliefState.tailleCase);
-		out.println(this.pacmanPos.dir);
-		out.println(this.score);
-		out.println(this.life);
-		out.println(this.nbrOfGommes);
-		out.println(this.nbrOfSuperGommes);
-		out.println(this.listPGhost.size());
-		for(int i = 0; i < this.listPGhost.size(); i++) {
-			out.println(this.compteurPeur.get(i));
-			out.println(this.listPGhost.get(i).size());
-			Iterator<Position> itPos = this.listPGhost.get(i).iterator();
-			while(itPos.hasNext()) {
-				Position posG = itPos.next();
-				out.println(posG.x + " " + posG.y + " " + posG.dir);
+	/**
+	 * write the state in a stream of snapshots (see SnapshotWriter) : the Zobrist keys are not written, they are computed again when the state is read
+	 * @param out the writer of the stream
+	 */
+	void save(SnapshotWriter out) {
+		out.writeVarint(this.context.code(this.pacmanPos));
+		out.writeVarint(this.context.code(this.pacmanOldPos));
+		out.writeSignedVarint(this.score);
+		out.writeSignedVarint(this.life);
+		out.writeVarint(this.nbrOfGommes);
+		out.writeVarint(this.nbrOfSuperGommes);
+		for(int a = 0; a < this.context.getNbrOfCells(); a++) {
+			int cell = this.context.cell(a);
+			char content = this.getContent(cell / this.context.getMapSize(), cell % this.context.getMapSize());
+			out.writeBits(content == '.' ? 1 : content == '*' ? 2 : 0, 2);
+		}
+		out.endBits();
+		out.writeVarint(this.ghostPositions.length);
+		for(int k = 0; k < this.ghostPositions.length; k++) {
+			out.writeSignedVarint(this.compteurPeur[k]);
+			out.writeVarint(this.ghostPositions[k].length);
+			for(int index = 0; index < this.ghostPositions[k].length; index++) {
+				out.writeVarint(this.ghostPositions[k][index] - (index == 0 ? 0 : this.ghostPositions[k][index - 1]));
 			}
-			int[] pos = this.listPGhostInit.get(i);
-			out.println(pos[0] + " " + pos[1]);
-		}
-		out.println(BeliefState.gamePositions.size());
-		for(int[] pos:BeliefState.gamePositions) {
-			out.println(pos[0] + " " + pos[1]);
 		}
-		for(String visiblePos: BeliefState.visible) {
-			out.println(visiblePos);
-		}
-		
-	}*/
+	}
 
 	/**
 	 * return the position of one of the ghost
@@ -1216,7 +859,19 @@ public class BeliefState implements Comparable{
 	 * @return the position of the ghost
 	 */
 	public Position getPGhost(int i) {
-		return this.listPGhost.get(i).first();
+		return this.context.position(this.ghostPositions[i][0]);
+	}
+
+	/**
+	 * return the position of each ghost
+	 * @return the position of the ghosts, as returned by getPGhost()
+	 */
+	public Position[] getPGhosts() {
+		Position[] posGhosts = new Position[this.ghostPositions.length];
+		for(int i = 0; i < posGhosts.length; i++) {
+			posGhosts[i] = this.getPGhost(i);
+		}
+		return posGhosts;
 	}
 
 	/**
@@ -1256,19 +911,47 @@ public class BeliefState implements Comparable{
 	 * @return number of ghosts
 	 */
 	public int getNbrOfGhost() {
-		return this.compteurPeur.size();
+		return this.compteurPeur.length;
 	}
 	
 	public int getCompteurPeur(int i) {
-		return this.compteurPeur.get(i);
+		return this.compteurPeur[i];
 	}
 	
 	public char getMap(int i, int j) {
-		return this.map[i][j];
+		if(i == this.pacmanPos.x && j == this.pacmanPos.y)
+			return this.getContent(i, j) == 'F' ? 'B' : 'P';
+		return this.getContent(i, j);
 	}
 	
+	/**
+	 * return a copy of the map, built from the gums of the state and the layout of the maze (MapContext)
+	 * @return the content of each square, as returned by getMap(i, j)
+	 */
 	public char[][] getMap(){
-		return this.map;
+		char[][] map = new char[this.context.getMapSize()][this.context.getMapSize()];
+		for(int i = 0; i < this.context.getMapSize(); i++) {
+			for(int j = 0; j < this.context.getMapSize(); j++) {
+				map[i][j] = this.getMap(i, j);
+			}
+		}
+		return map;
+	}
+
+	/**
+	 * return the description of the level of the state
+	 * @return the context shared by all the states of the game
+	 */
+	public MapContext getContext() {
+		return this.context;
+	}
+
+	/**
+	 * return the number of rows (and columns) of the map
+	 * @return the number of rows of the map
+	 */
+	public int getMapSize() {
+		return this.context.getMapSize();
 	}
 	
 	public Position getPacmanPosition() {
@@ -1280,77 +963,18 @@ public class BeliefState implements Comparable{
 	}
 	
 	public TreeSet<Position> getGhostPositions(int i){
-		return this.listPGhost.get(i);
-	}
-	public static boolean isVisible(int row1, int column1, int row2, int column2) {
-		//System.out.println("isVisible " + row1 + "," + column1 + ";" + row2 + "," + column2);
-		if(row1 == row2) {
-			//System.out.println("row " + row1 + " columns " + column1 + "," + column2);
-			return BeliefState.visible.contains(row1+","+Math.min(column1,column2)+";"+row2+","+Math.max(column1, column2));
+		TreeSet<Position> posGhost = new TreeSet<Position>();
+		for(int code: this.ghostPositions[i]) {
+			posGhost.add(this.context.position(code));
 		}
-		if(column1 == column2) {
-			//System.out.println("column " + column1 + " rows " + row1 + "," + row2);
-			return BeliefState.visible.contains(Math.min(row1, row2)+","+column1+";"+Math.max(row1, row2)+","+column2);
-		}
-		return false;
+		return posGhost;
 	}
-	
-	public int distanceMinToGum() {
-		LinkedList<int[]> queue = new LinkedList<int[]>();
-		HashSet<String> visited = new HashSet<String>();
-		int[] posP = new int[3];
-		posP[0] = this.pacmanPos.x;
-		posP[1] = this.pacmanPos.y;
-		posP[2] = 0;
-		queue.add(posP);
-		while(!queue.isEmpty()) {
-			int[] next = queue.pollFirst();
-			visited.add(next[0] + "," + next[1]);
-			if(next[0] > 0) {
-				if(!visited.contains((next[0] - 1) + "," + next[1])) {
-					char content = this.map[next[0] - 1][next[1]];
-					switch(content) {
-					case '.':
-					case '*': return next[2] + 1;
-					case '#': break;
-					default: int[] neighbor = {next[0] - 1, next[1], next[2] + 1}; queue.add(neighbor);
-					}
-				}
-			}
-			if(next[0] < BeliefState.taille - 1) {
-				if(!visited.contains((next[0] + 1) + "," + next[1])) {
-					char content = this.map[next[0] + 1][next[1]];
-					switch(content) {
-					case '.':
-					case '*': return next[2] + 1;
-					case '#': break;
-					default: int[] neighbor = {next[0] + 1, next[1], next[2] + 1}; queue.add(neighbor);
-					}
-				}
-			}
-			if(next[1] > 0) {
-				if(!visited.contains(next[0] + "," + (next[1] - 1))) {
-					char content = this.map[next[0]][next[1] - 1];
-					switch(content) {
-					case '.':
-					case '*': return next[2] + 1;
-					case '#': break;
-					default: int[] neighbor = {next[0], next[1] - 1, next[2] + 1}; queue.add(neighbor);
-					}
-				}
-			}
-			if(next[1] < BeliefState.taille - 1) {
-				if(!visited.contains(next[0] + "," + (next[1] + 1))) {
-					char content = this.map[next[0]][next[1] + 1];
-					switch(content) {
-					case '.':
-					case '*': return next[2] + 1;
-					case '#': break;
-					default: int[] neighbor = {next[0], next[1] + 1, next[2] + 1}; queue.add(neighbor);
-					}
-				}
-			}
-		}
-		return Integer.MAX_VALUE;
+	/**
+	 * return the distance in the maze from Pacman to the nearest gum (super gums excluded), without scanning the map :
+	 * the squares are visited by increasing distance from Pacman until one of them contains a gum
+	 * @return the distance to the nearest gum, Integer.MAX_VALUE if no gum can be reached
+	 */
+	public int distanceToNearestGum() {
+		return this.context.distanceToNearest(this.pacmanPos.x * this.context.getMapSize() + this.pacmanPos.y, this.gums);
 	}
 }
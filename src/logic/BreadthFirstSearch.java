@@ -0,0 +1,90 @@
+package logic;
+import java.util.Arrays;
+
+/**
+ * a breadth-first search over the squares of a maze, from one or several sources, that can be run again and again without allocating memory.
+ * The queue is an array of one entry per square (a square enters it at most once per search) and the visited squares are stamped with the number of the search,
+ * so that starting a new search does not clear anything.
+ * A search is not thread-safe : each thread must use its own.
+ */
+public final class BreadthFirstSearch {
+	private final int[] neighbours;
+	private final int[] queue;
+	private final int[] visited; //Numero de la derniere recherche ayant atteint chaque case
+	private final int[] depths; //Distance de chaque case aux sources, valable si la case a ete atteinte par la recherche en cours
+	private int generation;
+	private int head, tail;
+
+	/**
+	 * construct a search over a maze
+	 * @param nbrCells number of squares of the maze (walls included)
+	 * @param neighbours neighbour of each square in each direction (square * 4 + direction), -1 for a wall : the table is kept as it is
+	 */
+	public BreadthFirstSearch(int nbrCells, int[] neighbours) {
+		this.neighbours = neighbours;
+		this.queue = new int[nbrCells];
+		this.visited = new int[nbrCells];
+		this.depths = new int[nbrCells];
+	}
+
+	/**
+	 * start a new search, without any source yet
+	 */
+	public void start() {
+		this.generation++;
+		if(this.generation == 0) {//le compteur a fait le tour : les anciens tampons pourraient etre confondus avec les nouveaux
+			Arrays.fill(this.visited, 0);
+			this.generation = 1;
+		}
+		this.head = 0;
+		this.tail = 0;
+	}
+
+	/**
+	 * add a source to the current search, at distance 0, if it has not been reached yet
+	 * @param cell the square (row * taille + column)
+	 */
+	public void addSource(int cell) {
+		this.reach(cell, 0);
+	}
+
+	/**
+	 * return the next square of the search : the squares are returned by increasing distance from the nearest source,
+	 * the neighbours of a square are added to the search when it is returned
+	 * @return the square (row * taille + column), -1 when all the reachable squares have been returned
+	 */
+	public int next() {
+		if(this.head == this.tail)
+			return -1;
+		int cell = this.queue[this.head++];
+		int depth = this.depths[cell] + 1;
+		for(int d = 0; d < 4; d++) {
+			int neighbour = this.neighbours[cell * 4 + d];
+			if(neighbour != -1)
+				this.reach(neighbour, depth);
+		}
+		return cell;
+	}
+
+	/**
+	 * return the distance from a square to the nearest source
+	 * @param cell the square (row * taille + column)
+	 * @return the distance, Integer.MAX_VALUE if the square has not been reached by the current search yet
+	 */
+	public int distance(int cell) {
+		return this.visited[cell] == this.generation ? this.depths[cell] : Integer.MAX_VALUE;
+	}
+
+	/**
+	 * add a square to the queue if it has not been reached yet by the current search
+	 * @param cell the square
+	 * @param depth its distance to the sources
+	 */
+	private void reach(int cell, int depth) {
+		if(this.visited[cell] == this.generation)
+			return;
+		this.visited[cell] = this.generation;
+		this.depths[cell] = depth;
+		this.queue[this.tail++] = cell;
+	}
+}
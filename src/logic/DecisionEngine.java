@@ -0,0 +1,20 @@
+package logic;
+
+/**
+ * interface of the engines choosing the next move of Pacman from its current belief state
+ */
+public interface DecisionEngine {
+
+	/**
+	 * compute the next action to do (among UP, DOWN, LEFT, RIGHT)
+	 * @param beliefState the current belief-state of the agent
+	 * @return a string describing the next action (among PacManLauncher.UP/DOWN/LEFT/RIGHT)
+	 */
+	String findNextMove(BeliefState beliefState);
+
+	/**
+	 * forget what was learned during the previous level
+	 */
+	default void newLevel() {
+	}
+}
@@ -0,0 +1,467 @@
+package logic;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * the immutable description of a level, shared by all the belief states of a game : layout of the maze, starting positions of the entities,
+ * tables computed by the map (distances, moves, lines of sight), positions and Zobrist keys.
+ * Each map builds its own context, so several games can run in the same JVM.
+ * The tables given to the constructor are copied and are only read through the methods of the context : nothing the map modifies afterwards can change it.
+ */
+public final class MapContext {
+	private final List<int[]> gamePositions;//cases praticables
+	private final int[] rowSegments, columnSegments;//segment de ligne et de colonne de chaque case, -1 pour un mur : deux cases se voient si elles sont dans le meme segment
+	private final int pacmanXInit, pacmanYInit;
+	private final List<int[]> listPGhostInit;
+	private final int tailleCase;
+	private final int taille;
+	private final int[] cellIndex;//indice de chaque case dans la table des distances, -1 pour un mur
+	private final short[] distances;//distance dans le labyrinthe entre chaque paire de cases praticables, calculee par la map
+	private final int[][] cellsByDistance;//pour chaque case praticable, les cases (ligne * taille + colonne) accessibles depuis elle, triees par distance croissante
+	private final int[] neighbours;//case voisine de chaque case dans chaque direction (case * 4 + direction), -1 pour un mur, calculee par la map
+	private final int[][] ghostMoves;//codes des positions atteintes par un ghost qui erre depuis chaque position (voir Map.computeMoves())
+	private final long[] ghostStarts;//un bit par case, a 1 si la case est la case de depart d'un ghost
+	private final long[] zobristGum, zobristSuperGum, zobristPacman;
+	private final long[][] zobristGhost;
+	private final long[] zobristPeur;
+	private final Position[] positions;//la position de chaque code (case * 4 + direction)
+	private static final Position OUTSIDE = new Position(-1, -1, 'U');//position rendue pour toute case hors de la map
+
+	/**
+	 * build the context of a level from the tables computed by the map
+	 * @param gamePositions the squares that are not walls, as {row, column}
+	 * @param rowSegments the segment of row of each square (row * taille + column), -1 for a wall
+	 * @param columnSegments the segment of column of each square, -1 for a wall
+	 * @param pacmanXInit starting abscissa of Pacman, in pixels
+	 * @param pacmanYInit starting ordinate of Pacman, in pixels
+	 * @param listPGhostInit starting position of each ghost, as {x, y} in pixels
+	 * @param tailleCase size of a square, in pixels
+	 * @param taille number of rows (and columns) of the map
+	 * @param cellIndex index of each square in the table of distances, -1 for a wall
+	 * @param distances distance in the maze between each pair of squares that are not walls
+	 * @param neighbours neighbour of each square in each direction, -1 for a wall
+	 * @param ghostMoves codes of the positions reached by a wandering ghost from each position
+	 */
+	public MapContext(List<int[]> gamePositions, int[] rowSegments, int[] columnSegments, int pacmanXInit, int pacmanYInit, List<int[]> listPGhostInit, int tailleCase, int taille, int[] cellIndex, short[] distances, int[] neighbours, int[][] ghostMoves) {
+		this.gamePositions = MapContext.copy(gamePositions);
+		this.rowSegments = rowSegments.clone();
+		this.columnSegments = columnSegments.clone();
+		this.pacmanXInit = pacmanXInit;
+		this.pacmanYInit = pacmanYInit;
+		this.listPGhostInit = MapContext.copy(listPGhostInit);
+		this.tailleCase = tailleCase;
+		this.taille = taille;
+		this.cellIndex = cellIndex.clone();
+		this.distances = distances.clone();
+		this.neighbours = neighbours.clone();
+		this.ghostMoves = new int[ghostMoves.length][];
+		for(int code = 0; code < ghostMoves.length; code++) {
+			this.ghostMoves[code] = ghostMoves[code].clone();
+		}
+		this.ghostStarts = new long[(taille * taille + 63) / 64];
+		for(int[] pos: this.listPGhostInit) {
+			int cell = (pos[1] / tailleCase) * taille + pos[0] / tailleCase;
+			this.ghostStarts[cell >>> 6] |= 1L << cell;
+		}
+		this.cellsByDistance = this.sortCellsByDistance();
+		this.positions = new Position[taille * taille * 4];
+		for(int code = 0; code < this.positions.length; code++) {
+			this.positions[code] = new Position(code / 4 / taille, code / 4 % taille, Position.DIRECTIONS.charAt(code % 4));
+		}
+		Random random = new Random(taille);//graine fixe : les cles sont identiques d'une partie a l'autre
+		this.zobristGum = new long[taille * taille];
+		this.zobristSuperGum = new long[taille * taille];
+		this.zobristPacman = new long[taille * taille * 4];
+		for(int i = 0; i < taille * taille; i++) {
+			this.zobristGum[i] = random.nextLong();
+			this.zobristSuperGum[i] = random.nextLong();
+		}
+		for(int i = 0; i < taille * taille * 4; i++) {
+			this.zobristPacman[i] = random.nextLong();
+		}
+		this.zobristPeur = new long[Ghost.TIME_PEUR + 1];
+		for(int i = 0; i <= Ghost.TIME_PEUR; i++) {
+			this.zobristPeur[i] = random.nextLong();
+		}
+		this.zobristGhost = new long[listPGhostInit.size()][];
+		for(int k = 0; k < this.zobristGhost.length; k++) {
+			random = new Random(taille * 31 + k);
+			this.zobristGhost[k] = new long[taille * taille * 4];
+			for(int i = 0; i < this.zobristGhost[k].length; i++) {
+				this.zobristGhost[k][i] = random.nextLong();
+			}
+		}
+	}
+
+	/**
+	 * copy a list of positions given as arrays
+	 * @param positions the positions
+	 * @return a list that cannot be modified, holding a copy of each position
+	 */
+	private static List<int[]> copy(List<int[]> positions) {
+		ArrayList<int[]> copy = new ArrayList<int[]>(positions.size());
+		for(int[] pos: positions) {
+			copy.add(pos.clone());
+		}
+		return Collections.unmodifiableList(copy);
+	}
+
+	/**
+	 * write the level in a stream of snapshots (see SnapshotWriter).
+	 * Only the squares that are not walls are written, with the tables computed from them by the map (distances and moves of the ghosts) :
+	 * the other tables follow from the layout and are rebuilt by load(), the Zobrist keys are drawn again from the same seeds
+	 * @param out the writer of the stream
+	 */
+	void save(SnapshotWriter out) {
+		out.writeVarint(this.taille);
+		out.writeVarint(this.tailleCase);
+		out.writeVarint(this.pacmanXInit);
+		out.writeVarint(this.pacmanYInit);
+		out.writeVarint(this.listPGhostInit.size());
+		for(int[] pos: this.listPGhostInit) {
+			out.writeVarint(pos[0]);
+			out.writeVarint(pos[1]);
+		}
+		for(int cell = 0; cell < this.taille * this.taille; cell++) {
+			out.writeBits(this.cellIndex[cell] == -1 ? 0 : 1, 1);
+		}
+		out.endBits();
+		int nbrCells = this.gamePositions.size();
+		for(int a = 0; a < nbrCells; a++) {//la table est symetrique : seules les distances vers les cases suivantes sont ecrites, 0 pour une case inaccessible
+			for(int b = a + 1; b < nbrCells; b++) {
+				short d = this.distances[a * nbrCells + b];
+				out.writeVarint(d == Short.MAX_VALUE ? 0 : d);
+			}
+		}
+		for(int code = 0; code < this.ghostMoves.length; code++) {//chaque deplacement mene a la case voisine dans sa direction : seules les directions sont ecrites, dans l'ordre
+			int[] moves = this.ghostMoves[code];
+			int packed = moves.length;
+			for(int m = 0; m < moves.length; m++) {
+				int d = moves[m] & 3;
+				if(moves[m] >>> 2 != this.neighbours[(code & ~3) + d])
+					throw new IllegalStateException("move of a ghost to a square that is not a neighbour");
+				packed |= d << (3 + 2 * m);
+			}
+			out.writeVarint(packed);
+		}
+	}
+
+	/**
+	 * read a level written by save()
+	 * @param in the buffer to read, positioned at the start of the level
+	 * @return the level
+	 */
+	static MapContext load(ByteBuffer in) {
+		int taille = SnapshotReader.readVarint(in);
+		int tailleCase = SnapshotReader.readVarint(in);
+		int pacmanXInit = SnapshotReader.readVarint(in);
+		int pacmanYInit = SnapshotReader.readVarint(in);
+		int nbrGhosts = SnapshotReader.readVarint(in);
+		ArrayList<int[]> listPGhostInit = new ArrayList<int[]>(nbrGhosts);
+		for(int k = 0; k < nbrGhosts; k++) {
+			listPGhostInit.add(new int[] {SnapshotReader.readVarint(in), SnapshotReader.readVarint(in)});
+		}
+		//cases praticables et segments, dans l'ordre de lecture de la map (voir Map.addSegments())
+		ArrayList<int[]> gamePositions = new ArrayList<int[]>();
+		int[] cellIndex = new int[taille * taille];
+		int[] rowSegments = new int[taille * taille];
+		int[] columnSegments = new int[taille * taille];
+		Arrays.fill(cellIndex, -1);
+		Arrays.fill(rowSegments, -1);
+		Arrays.fill(columnSegments, -1);
+		int nbrSegments = 0;
+		for(int cell = 0; cell < taille * taille; cell++) {
+			if(SnapshotReader.getBits(in, cell, 1) == 0)
+				continue;
+			int i = cell / taille, j = cell % taille;
+			cellIndex[cell] = gamePositions.size();
+			gamePositions.add(new int[] {i, j});
+			rowSegments[cell] = j > 0 && rowSegments[cell - 1] != -1 ? rowSegments[cell - 1] : nbrSegments++;
+			columnSegments[cell] = i > 0 && columnSegments[cell - taille] != -1 ? columnSegments[cell - taille] : nbrSegments++;
+		}
+		SnapshotReader.skipBits(in, taille * taille);
+		int nbrCells = gamePositions.size();
+		short[] distances = new short[nbrCells * nbrCells];
+		for(int a = 0; a < nbrCells; a++) {
+			for(int b = a + 1; b < nbrCells; b++) {
+				int d = SnapshotReader.readVarint(in);
+				distances[a * nbrCells + b] = distances[b * nbrCells + a] = d == 0 ? Short.MAX_VALUE : (short)d;
+			}
+		}
+		int[][] voisins = {{1, 0}, {0, -1}, {0, 1}, {-1, 0}};//dans l'ordre de Map.DIRECTIONS
+		int[] neighbours = new int[taille * taille * 4];
+		for(int cell = 0; cell < taille * taille; cell++) {
+			for(int d = 0; d < 4; d++) {
+				int i = cell / taille + voisins[d][0];
+				int j = cell % taille + voisins[d][1];
+				neighbours[cell * 4 + d] = i >= 0 && i < taille && j >= 0 && j < taille && cellIndex[i * taille + j] != -1 ? i * taille + j : -1;
+			}
+		}
+		int[][] ghostMoves = new int[taille * taille * 4][];
+		for(int code = 0; code < ghostMoves.length; code++) {
+			int packed = SnapshotReader.readVarint(in);
+			ghostMoves[code] = new int[packed & 7];
+			for(int m = 0; m < ghostMoves[code].length; m++) {
+				int d = (packed >>> (3 + 2 * m)) & 3;
+				ghostMoves[code][m] = neighbours[(code & ~3) + d] * 4 + d;
+			}
+		}
+		return new MapContext(gamePositions, rowSegments, columnSegments, pacmanXInit, pacmanYInit, listPGhostInit, tailleCase, taille, cellIndex, distances, neighbours, ghostMoves);
+	}
+
+	/**
+	 * sort, for each square, the squares that can be reached from it by increasing distance in the maze
+	 * @return for each square that is not a wall, the squares (row * taille + column) reachable from it, nearest first
+	 */
+	private int[][] sortCellsByDistance() {
+		int nbrCells = this.gamePositions.size();
+		int[][] cellsByDistance = new int[nbrCells][];
+		for(int a = 0; a < nbrCells; a++) {
+			int source = a;
+			ArrayList<int[]> reachable = new ArrayList<int[]>();
+			for(int b = 0; b < nbrCells; b++) {
+				if(this.distances[a * nbrCells + b] != Short.MAX_VALUE)
+					reachable.add(this.gamePositions.get(b));
+			}
+			reachable.sort((pos1, pos2) -> this.distances[source * nbrCells + this.cellIndex[pos1[0] * this.taille + pos1[1]]] - this.distances[source * nbrCells + this.cellIndex[pos2[0] * this.taille + pos2[1]]]);
+			cellsByDistance[a] = new int[reachable.size()];
+			for(int i = 0; i < reachable.size(); i++) {
+				cellsByDistance[a][i] = reachable.get(i)[0] * this.taille + reachable.get(i)[1];
+			}
+		}
+		return cellsByDistance;
+	}
+
+	/**
+	 * return the position of an entity
+	 * @param x row
+	 * @param y column
+	 * @param dir direction followed by the entity
+	 * @return the shared position, or a single shared position at (-1, -1) if it is outside of the map or if the direction is unknown
+	 */
+	Position position(int x, int y, char dir) {
+		int d = Position.DIRECTIONS.indexOf(dir);
+		if(d == -1 || x < 0 || y < 0 || x >= this.taille || y >= this.taille)
+			return MapContext.OUTSIDE;
+		return this.positions[(x * this.taille + y) * 4 + d];
+	}
+
+	/**
+	 * return the position corresponding to a code
+	 * @param code the square of the position (row * taille + column) followed by its direction on two bits
+	 * @return the shared position
+	 */
+	Position position(int code) {
+		return this.positions[code];
+	}
+
+	/**
+	 * return the code of a position : its square (row * taille + column) followed by its direction on two bits.
+	 * Codes are ordered as the positions themselves (Position.compareTo)
+	 * @param pos a position
+	 * @return the code of the position
+	 */
+	int code(Position pos) {
+		return (pos.x * this.taille + pos.y) * 4 + Position.DIRECTIONS.indexOf(pos.dir);
+	}
+
+	/**
+	 * return the random key of a ghost at a given position
+	 * @param k Id of the ghost
+	 * @param code position of the ghost, as computed by code()
+	 * @return the key of the ghost at this position
+	 */
+	long ghostKey(int k, int code) {
+		return this.zobristGhost[k][(code & ~3) + MapContext.dirIndex(Position.DIRECTIONS.charAt(code & 3))];
+	}
+
+	/**
+	 * return the starting position of Pacman
+	 * @return the square of Pacman when the level starts or when he loses a life, facing up
+	 */
+	Position pacmanStart() {
+		return this.position(this.pacmanYInit / this.tailleCase, this.pacmanXInit / this.tailleCase, 'U');
+	}
+
+	/**
+	 * return the number of ghosts of the level
+	 * @return the number of ghosts
+	 */
+	int getNbrOfGhosts() {
+		return this.listPGhostInit.size();
+	}
+
+	/**
+	 * return the starting position of a ghost
+	 * @param k Id of the ghost
+	 * @return the square of the ghost when the level starts or when it is eaten, facing up
+	 */
+	Position ghostStart(int k) {
+		int[] pos = this.listPGhostInit.get(k);
+		return this.position(pos[1] / this.tailleCase, pos[0] / this.tailleCase, 'U');
+	}
+
+	/**
+	 * tell whether a square is the starting square of a ghost
+	 * @param cell the square (row * taille + column)
+	 * @return true if a ghost starts on this square
+	 */
+	boolean isGhostStart(int cell) {
+		return (this.ghostStarts[cell >>> 6] & (1L << cell)) != 0;
+	}
+
+	/**
+	 * return the number of squares that are not walls
+	 * @return the number of squares of the maze
+	 */
+	int getNbrOfCells() {
+		return this.gamePositions.size();
+	}
+
+	/**
+	 * return one of the squares that are not walls, in the order of the map
+	 * @param a index of the square, between 0 and getNbrOfCells() - 1
+	 * @return the square (row * taille + column)
+	 */
+	int cell(int a) {
+		int[] pos = this.gamePositions.get(a);
+		return pos[0] * this.taille + pos[1];
+	}
+
+	/**
+	 * tell whether a square is a wall
+	 * @param cell the square (row * taille + column)
+	 * @return true if the square is a wall
+	 */
+	boolean isWall(int cell) {
+		return this.cellIndex[cell] == -1;
+	}
+
+	/**
+	 * return the neighbour of a square in a direction
+	 * @param cell the square (row * taille + column)
+	 * @param d index of the direction in Position.DIRECTIONS
+	 * @return the neighbouring square, -1 if it is a wall
+	 */
+	int neighbour(int cell, int d) {
+		return this.neighbours[cell * 4 + d];
+	}
+
+	/**
+	 * return the number of positions a wandering ghost can reach from a position (see Map.computeMoves())
+	 * @param code position of the ghost, as computed by code()
+	 * @return the number of moves of the ghost
+	 */
+	int nbrGhostMoves(int code) {
+		return this.ghostMoves[code].length;
+	}
+
+	/**
+	 * return one of the positions a wandering ghost can reach from a position
+	 * @param code position of the ghost, as computed by code()
+	 * @param m index of the move, between 0 and nbrGhostMoves(code) - 1
+	 * @return the code of the reached position
+	 */
+	int ghostMove(int code, int m) {
+		return this.ghostMoves[code][m];
+	}
+
+	/**
+	 * return the distance from a square to the nearest square marked in a set, the squares being visited by increasing distance
+	 * @param cell the starting square (row * taille + column)
+	 * @param squares one bit per square, 64 squares per word
+	 * @return the distance to the nearest marked square, Integer.MAX_VALUE if none can be reached
+	 */
+	int distanceToNearest(int cell, long[] squares) {
+		int a = this.cellIndex[cell];
+		if(a == -1)
+			return Integer.MAX_VALUE;
+		for(int other : this.cellsByDistance[a]) {
+			if((squares[other >>> 6] & (1L << other)) != 0)
+				return this.distances[a * this.gamePositions.size() + this.cellIndex[other]];
+		}
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+	 * return the random key of a gum on a square
+	 * @param cell the square (row * taille + column)
+	 * @return the key of the gum
+	 */
+	long gumKey(int cell) {
+		return this.zobristGum[cell];
+	}
+
+	/**
+	 * return the random key of a super gum on a square
+	 * @param cell the square (row * taille + column)
+	 * @return the key of the super gum
+	 */
+	long superGumKey(int cell) {
+		return this.zobristSuperGum[cell];
+	}
+
+	/**
+	 * return the random key of Pacman at a given position
+	 * @param pos position of Pacman
+	 * @return the key of Pacman at this position
+	 */
+	long pacmanKey(Position pos) {
+		return this.zobristPacman[(pos.x * this.taille + pos.y) * 4 + MapContext.dirIndex(pos.dir)];
+	}
+
+	/**
+	 * return the random key of the fear of a ghost
+	 * @param peur remaining time of fear, a value out of [0, Ghost.TIME_PEUR] counting as 0
+	 * @return the key of this time of fear
+	 */
+	long fearKey(int peur) {
+		return this.zobristPeur[peur >= 0 && peur <= Ghost.TIME_PEUR ? peur : 0];
+	}
+
+	/**
+	 * return the index of a direction in the Zobrist keys
+	 * @param dir direction among 'U', 'D', 'L', 'R'
+	 * @return the index of the direction
+	 */
+	static int dirIndex(char dir) {
+		switch(dir) {
+		case 'U': return 0;
+		case 'D': return 1;
+		case 'L': return 2;
+		default: return 3;
+		}
+	}
+
+	/**
+	 * return the number of rows (and columns) of the map
+	 * @return the size of the map
+	 */
+	public int getMapSize() {
+		return this.taille;
+	}
+
+	/**
+	 * tell whether two squares see each other : they are on the same row or the same column, with no wall between them
+	 * @param row1 row of the first square
+	 * @param column1 column of the first square
+	 * @param row2 row of the second square
+	 * @param column2 column of the second square
+	 * @return true if both squares are in the same segment of row or of column
+	 */
+	public boolean isVisible(int row1, int column1, int row2, int column2) {
+		if(row1 < 0 || column1 < 0 || row2 < 0 || column2 < 0 || row1 >= this.taille || column1 >= this.taille || row2 >= this.taille || column2 >= this.taille)
+			return false;
+		int cell1 = row1 * this.taille + column1;
+		int cell2 = row2 * this.taille + column2;
+		if(row1 == row2)
+			return this.rowSegments[cell1] != -1 && this.rowSegments[cell1] == this.rowSegments[cell2];
+		if(column1 == column2)
+			return this.columnSegments[cell1] != -1 && this.columnSegments[cell1] == this.columnSegments[cell2];
+		return false;
+	}
+}
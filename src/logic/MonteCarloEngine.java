@@ -0,0 +1,199 @@
+package logic;
+import java.util.*;
+import view.Gomme;
+
+/**
+ * class implementing a Monte Carlo tree search (POMCP-style) to choose the next move of the Pacman.
+ * Instead of enumerating all the possible positions of the ghosts like AI.andSearch/orSearch, each simulation draws one position per ghost among its possible positions,
+ * then goes down the tree by drawing one of the belief states of the result of each action : the cost of a move only depends on the number of simulations.
+ */
+public class MonteCarloEngine implements DecisionEngine {
+
+	/**
+	 * node of the search tree : the statistics of the simulations that went through a sequence of actions
+	 */
+	private static class Node {
+		HashMap<String, Node> children = new HashMap<>(); //Les noeuds atteints par chaque action
+		int visits; //Nombre de simulations passées par ce noeud
+		double somme; //Somme des scores de ces simulations
+	}
+
+	private final static double exploration = Math.sqrt(2) * Gomme.SCORE_GOMME; //Constante d'exploration de UCB1, à l'échelle du score d'une gomme (la mort du pacman écraserait tout écart de score)
+	private int iterations; //Nombre maximal de simulations par coup
+	private long timeBudget; //Budget de temps (en ms) accordé à chaque coup, 0 pour n'être limité que par le nombre de simulations
+	private int deepth; //Nombre de coups simulés avant d'estimer le beliefState atteint avec l'heuristique de l'AI
+	private Random random;
+	private final AI ai; //L'AI dont l'heuristique estime les beliefStates atteints
+
+	/**
+	 * construct an engine running a fixed number of simulations per move, each one simulating at most 6 moves
+	 * @param ai the AI of the game, whose heuristic estimates the belief states reached by the simulations
+	 * @param iterations the number of simulations per move
+	 */
+	public MonteCarloEngine(AI ai, int iterations) {
+		this(ai, iterations, 0, 6, new Random());
+	}
+
+	/**
+	 * construct an engine
+	 * @param ai the AI of the game, whose heuristic estimates the belief states reached by the simulations
+	 * @param iterations the maximal number of simulations per move
+	 * @param timeBudget the time budget of a move in milliseconds, 0 to be limited only by the number of simulations
+	 * @param deepth the number of moves simulated before the heuristic of the AI is used
+	 * @param random the random generator used to draw the positions of the ghosts and the belief states
+	 */
+	public MonteCarloEngine(AI ai, int iterations, long timeBudget, int deepth, Random random) {
+		this.ai = ai;
+		this.iterations = Math.max(1, iterations);
+		this.timeBudget = timeBudget;
+		this.deepth = Math.max(1, deepth);
+		this.random = random;
+	}
+
+	/**
+	 * fixe le nombre maximal de simulations par coup
+	 * @param iterations le nombre de simulations
+	 */
+	public void setIterations(int iterations) {
+		this.iterations = Math.max(1, iterations);
+	}
+
+	/**
+	 * fixe le budget de temps accordé à chaque coup
+	 * @param timeBudget le budget de temps en millisecondes (0 pour n'être limité que par le nombre de simulations)
+	 */
+	public void setTimeBudget(long timeBudget) {
+		this.timeBudget = timeBudget;
+	}
+
+	@Override
+	public String findNextMove(BeliefState beliefState) {
+		ArrayList<String> actions = getActions(beliefState);
+		if(actions.size() == 1){
+			return actions.get(0);
+		}
+
+		Node root = new Node();
+		long deadline = System.currentTimeMillis() + this.timeBudget;
+		//Au moins une simulation par action, pour avoir un coup à jouer même si le budget de temps est très court
+		for(int i = 0; i < this.iterations && (this.timeBudget <= 0 || i < actions.size() || System.currentTimeMillis() < deadline); i++){
+			this.simulate(root, beliefState, this.deepth);
+		}
+
+		//On joue l'action la plus simulée, et en cas d'égalité celle dont le score moyen est le meilleur
+		String bestMove = null;
+		Node bestNode = null;
+		for(String action : actions){
+			Node child = root.children.get(action);
+			if(child == null){
+				continue;
+			}
+			if(bestNode == null || child.visits > bestNode.visits || (child.visits == bestNode.visits && child.somme / child.visits > bestNode.somme / bestNode.visits)){
+				bestMove = action;
+				bestNode = child;
+			}
+		}
+		return bestMove;
+	}
+
+	/**
+	 * simule une partie depuis un beliefState : une position est tirée pour chaque fantôme, l'action est choisie par UCB1 et l'un des beliefStates de son result est tiré au hasard selon son poids
+	 * @param node le noeud de l'arbre correspondant au beliefState
+	 * @param beliefState le beliefState depuis lequel on simule
+	 * @param deepth le nombre de coups restant à simuler
+	 * @return le score de la simulation : l'heuristique de l'AI sur le beliefState atteint
+	 */
+	private double simulate(Node node, BeliefState beliefState, int deepth) {
+		if(deepth == 0){
+			return this.evaluate(beliefState, deepth);
+		}
+		ArrayList<String> actions = getActions(beliefState);
+		//Comme dans andSearch, un beliefState sans action possible (le pacman est mort) vaut -1
+		if(actions.isEmpty()){
+			return this.evaluate(beliefState, deepth);
+		}
+
+		String action = this.select(node, actions);
+		Result result = beliefState.sample(this.random).extendsBeliefState(action);
+		BeliefState next = result.getRandomBeliefState(this.random);
+
+		Node child = node.children.get(action);
+		double score;
+		if(child == null){
+			//Nouveau noeud : on l'estime directement avec l'heuristique
+			child = new Node();
+			node.children.put(action, child);
+			score = this.evaluate(next, deepth - 1);
+		}
+		else{
+			score = this.simulate(child, next, deepth - 1);
+		}
+		child.visits++;
+		child.somme += score;
+		node.visits++;
+		return score;
+	}
+
+	/**
+	 * estime un beliefState sans le simuler, avec la même règle que AI.getScore à toutes les profondeurs :
+	 * l'heuristique de l'AI (qui vaut 0 si le pacman est mort), sauf si le pacman est mort avant la fin de la simulation, ce qui vaut -1 comme un beliefState sans action dans andSearch
+	 * @param beliefState le beliefState à estimer
+	 * @param deepth le nombre de coups qu'il restait à simuler depuis ce beliefState
+	 * @return le score du beliefState
+	 */
+	private double evaluate(BeliefState beliefState, int deepth) {
+		if(deepth > 0 && beliefState.getLife() <= 0){
+			return -1;
+		}
+		return this.ai.getHeuristic(beliefState);
+	}
+
+	/**
+	 * @param node un noeud de l'arbre
+	 * @param actions les actions possibles depuis ce noeud
+	 * @return la première action jamais essayée depuis ce noeud, ou à défaut celle qui maximise UCB1
+	 */
+	private String select(Node node, ArrayList<String> actions) {
+		String bestAction = null;
+		double bestValue = Double.NEGATIVE_INFINITY;
+		for(String action : actions){
+			Node child = node.children.get(action);
+			if(child == null){
+				return action;
+			}
+			double value = child.somme / child.visits + exploration * Math.sqrt(Math.log(node.visits) / child.visits);
+			if(value > bestValue){
+				bestValue = value;
+				bestAction = action;
+			}
+		}
+		return bestAction;
+	}
+
+	/**
+	 * @param beliefState un beliefState
+	 * @return les actions que l'AI peut choisir depuis ce beliefState, dans l'ordre de son plan : les cases libres autour du pacman, et la case de l'unique mur s'il n'y en a qu'un (comme le plan des murs de extendsBeliefState)
+	 */
+	private static ArrayList<String> getActions(BeliefState beliefState) {
+		ArrayList<String> actions = new ArrayList<>();
+		if(beliefState.getLife() <= 0){
+			return actions;
+		}
+		String[] directions = {PacManLauncher.UP, PacManLauncher.DOWN, PacManLauncher.LEFT, PacManLauncher.RIGHT};
+		ArrayList<String> murs = new ArrayList<>();
+		for(String direction : directions){
+			//Les voisins sont lus dans la table du niveau, comme pour extendsBeliefState
+			if(beliefState.canMove(direction)){
+				actions.add(direction);
+			}
+			else{
+				murs.add(direction);
+			}
+		}
+		//On lui interdit les murs, sauf s'il n'y en a qu'un : l'AI le considère alors comme une action
+		if(murs.size() == 1){
+			actions.add(murs.get(0));
+		}
+		return actions;
+	}
+}
@@ -8,6 +8,7 @@ public class PacManLauncher {
 	private data.Map maps;
 	private Pacman pacman;
 	private Ghost[] ghost;
+	private AI ai;
 	public static final String UP = "UP";
 	public static final String DOWN = "DOWN";
 	public static final String LEFT = "LEFT";
@@ -24,6 +25,7 @@ public class PacManLauncher {
 	 * les fantomes du niveau
 	 */
 	public PacManLauncher () {
+		this.ai = new AI();
 		this.maps = new data.Map(1, this);
 		this.fillGhost();
 		this.pacman = new Pacman(this.maps.getTailleCase(), this.maps.getPMX(), this.maps.getPMY());
@@ -33,17 +35,26 @@ public class PacManLauncher {
 		
 	}
 
+	/**
+	 * lance une partie jouee par l'IA
+	 * @param args "-headless" pour jouer sans fenetre et sans attendre entre deux images
+	 */
 	public static void main (String[] args) {
 		//Canvas c = Canvas.getCanvas();
+		Canvas.setHeadless(Arrays.asList(args).contains("-headless"));
 		PacManLauncher pml = new PacManLauncher();
 		pml.draw();
 		pml.animate(); // Le lvl 1
 
 		int i = 2;
+		int lvl = 1; // Le niveau en cours
+		int nbrLvl = 1; // Le nombre de niveaux joues
 		while ((pml.getPacman().getLife() > 0) && (pml.nbrSamples < PacManLauncher.nbrMaxSample)) {
 			pml.upLvl(i);
 			pml.draw();
 			pml.animate();
+			lvl = i;
+			nbrLvl++;
 			i++;
 			if (i > PacManLauncher.NBR_LVL) {
 				i=1;
@@ -54,6 +65,7 @@ public class PacManLauncher {
 			Score.setScore(pml.getPacman().getScore()+"");
 		}
 		System.out.println("mean time resolution:" + pml.meanTimeResolution + "ms\nnbr of actions: " + pml.nbrSamples);
+		System.out.println("score: " + pml.getPacman().getScore() + "\nlife: " + pml.getPacman().getLife() + "\nlevel: " + lvl + " (" + nbrLvl + " played)");
 		System.out.println("~~~END~~~");
 	}
 
@@ -66,6 +78,7 @@ public class PacManLauncher {
 		this.pacman.setLocation(this.maps.getPMX(), this.maps.getPMY());
 		this.pacman.setCount(0);
 		this.pacman.setMap(this.maps);
+		this.ai.newLevel();
 	}
 
 	/**
@@ -114,6 +127,14 @@ public class PacManLauncher {
 		return this.pacman;
 	}
 
+	/**
+	 * retourne l'IA de la partie, pour la configurer
+	 * @return l'IA qui joue pour pacman
+	 */
+	public AI getAI () {
+		return this.ai;
+	}
+
 	/**
 	 * lance le deroulement du jeu
 	 * en regardant la touche utiliser par l'utilisateur pour deplacer pacman
@@ -171,7 +192,7 @@ public class PacManLauncher {
 				if(this.maps.getVisibleBeliefState().size() != 1) {
 					System.out.println("Problem");
 				}
-				isInit = this.pacman.move(AI.findNextMove(this.maps.getVisibleBeliefState().get(0)));//l'IA choisit un mouvement est Pacman commence a se deplacer
+				isInit = this.pacman.move(this.ai.findNextMove(this.maps.getVisibleBeliefState().get(0)));//l'IA choisit un mouvement est Pacman commence a se deplacer
 				elapsedTime = System.currentTimeMillis() - elapsedTime;
 				this.nbrSamples++;
 				this.meanTimeResolution = ((double)elapsedTime) / this.nbrSamples + (((double)(this.nbrSamples - 1)) / this.nbrSamples) * this.meanTimeResolution;
@@ -231,9 +252,7 @@ public class PacManLauncher {
 			}
 			this.collisionGhost(isInit, isDead);
 			
-			for(int i = 0; i < this.ghost.length; i++) {
-				BeliefState.filter(this.maps.getVisibleBeliefState(), i, this.maps.getBeliefState().getPGhost(i));
-			}
+			BeliefState.filter(this.maps.getVisibleBeliefState(), this.maps.getBeliefState().getPGhosts());
 			
 		}
 	}
@@ -0,0 +1,73 @@
+package logic;
+
+import data.Map;
+
+/**
+ * an object Position correspond to a position in the Pacman grid.
+ * Positions are immutable and shared : the positions of the map are created once by its MapContext, in a table indexed by their code
+ */
+class Position implements Comparable{
+	public final int x, y;
+	public final char dir;
+	static final String DIRECTIONS = Map.DIRECTIONS;//directions dans l'ordre des caracteres, pour que l'ordre des codes soit celui de compareTo
+
+	/**
+	 * construct a new Object position corresponding to the position of an entity (ghost or pacman) in the grid.
+	 * The positions of a map are created once by its MapContext and obtained with MapContext.position()
+	 * @param x row
+	 * @param y column
+	 * @param dir direction followed by the entity
+	 */
+	Position(int x, int y, char dir) {
+		this.x = x;
+		this.y = y;
+		this.dir = dir;
+	}
+	
+	/**
+	 * return the row index
+	 * @return the row index
+	 */
+	int getRow() {
+		return this.x;
+	}
+	
+	/**
+	 * return the column index
+	 * @return the column index
+	 */
+	int getColumn() {
+		return this.y;
+	}
+	
+	/**
+	 * return direction (among 'U', 'D', 'L', 'R')
+	 * @return
+	 */
+	char getDirection() {
+		return this.dir;
+	}
+
+	public String toString() {
+		return "(" + this.x + "," + this.y + ") " + this.dir;
+	}
+
+	
+	/**
+	 * used to compare two positions
+	 * @return 0 if the two positions are the same
+	 */
+	public int compareTo(Object o) {
+		Position pos = (Position)o;
+		int comp = this.x - pos.x;
+		if(comp != 0)
+			return comp;
+		comp = this.y - pos.y;
+		if(comp != 0)
+			return comp;
+		comp = this.dir - pos.dir;
+		if(comp != 0)
+			return comp;
+		return 0; 
+	}
+}
@@ -0,0 +1,106 @@
+package logic;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * class used to represent a transition function i.e., a set of possible belief states the agent may be in after performing an action.
+ * Each belief state has a weight : the number of times it was reached by the action
+ */
+class Result{
+	private ArrayList<BeliefState> beliefStates;
+	private int[] weights;
+	private int totalWeight;
+	/**
+	 * construct a new result, identical states being merged into a single belief state whose weight is the number of times it appears
+	 * @param states the set of states corresponding to the new belief state
+	 */
+	public Result(ArrayList<BeliefState> states) {
+		this.totalWeight = states.size();
+		if(states.size() <= 1) {
+			this.beliefStates = states;
+			this.weights = new int[states.size()];
+			Arrays.fill(this.weights, 1);
+			return;
+		}
+		this.beliefStates = new ArrayList<BeliefState>(states.size());
+		this.weights = new int[states.size()];
+		HashMap<BeliefState, Integer> indexes = new HashMap<BeliefState, Integer>();
+		for(BeliefState state: states) {
+			Integer index = indexes.putIfAbsent(state, this.beliefStates.size());
+			if(index == null) {
+				index = this.beliefStates.size();
+				this.beliefStates.add(state);
+			}
+			this.weights[index]++;
+		}
+		this.weights = Arrays.copyOf(this.weights, this.beliefStates.size());
+
+	}
+	/**
+	 * returns the number of belief states
+	 * @return the number of belief states
+	 */
+	public int size() {
+		return this.beliefStates.size();
+
+	}
+	/**
+	 * return one of the belief state
+	 * @param index the index of the belief state to return
+	 * @return the belief state to return
+	 */
+	public BeliefState getBeliefState(int index) {
+		return this.beliefStates.get(index);
+
+	}
+	/**
+	 * return the list of belief-states
+	 * @return the list of belief-states
+	 */
+	public ArrayList<BeliefState> getBeliefStates(){
+		return this.beliefStates;
+
+	}
+	/**
+	 * return the weight of one of the belief states
+	 * @param index the index of the belief state
+	 * @return the number of times the belief state was reached
+	 */
+	public int getWeight(int index) {
+		return this.weights[index];
+
+	}
+	/**
+	 * return the sum of the weights of the belief states
+	 * @return the number of states reached, duplicates included
+	 */
+	public int getTotalWeight() {
+		return this.totalWeight;
+
+	}
+	/**
+	 * return the belief state covering a given weight, the belief states being laid end to end
+	 * @param weight a weight between 0 (included) and the total weight (excluded)
+	 * @return the index of the belief state
+	 */
+	public int indexOfWeight(int weight) {
+		int index = 0;
+		while(weight >= this.weights[index]) {
+			weight -= this.weights[index++];
+		}
+		return index;
+
+	}
+	/**
+	 * draw one of the belief states with a probability proportional to its weight
+	 * @param random the random generator
+	 * @return the drawn belief state
+	 */
+	public BeliefState getRandomBeliefState(Random random) {
+		return this.beliefStates.get(this.indexOfWeight(random.nextInt(this.totalWeight)));
+
+	}
+
+}
@@ -0,0 +1,136 @@
+package logic;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * the part of the search tree already explored by the AI, kept from one move to the next.
+ * The tree is stored as the plans of the belief states already extended, indexed by the belief states themselves (by identity) :
+ * the belief states of the results of a plan are the children of the extended belief state.
+ * When the game reaches one of the children of the root, this child becomes the new root and the rest of the tree is forgotten.
+ * The number of plans kept is bounded : once the bound is reached, the plans of new belief states are not kept until the next move.
+ * As the search deepens iteratively, the plans kept are those of the belief states nearest to the root,
+ * so the next search only extends again the belief states under them.
+ * The plans can be read and extended by several threads at once (see AI.setParallelism()) without locking the tree.
+ */
+class SearchTree {
+	/**
+	 * key of the map of the plans : a belief state compared by identity
+	 */
+	private static final class Node {
+		final BeliefState state;
+
+		Node(BeliefState state) {
+			this.state = state;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(this.state);
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Node && ((Node)o).state == this.state;
+		}
+	}
+
+	private ConcurrentHashMap<Node, Plans> plans;
+	private BeliefState root;
+	private int maxSize;
+
+	/**
+	 * construct an empty tree
+	 * @param maxSize maximal number of extended belief states kept in the tree, 0 to keep none : when several threads extend the tree at once, it may be exceeded by the number of threads
+	 */
+	public SearchTree(int maxSize) {
+		this.plans = new ConcurrentHashMap<Node, Plans>();
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * return the plan of a belief state, extending it only if it was not extended yet
+	 * @param beliefState a belief state of the tree
+	 * @return the plan of the belief state, as computed by BeliefState.extendsBeliefState()
+	 */
+	public Plans extendsBeliefState(BeliefState beliefState) {
+		Node node = new Node(beliefState);
+		Plans plan = this.plans.get(node);
+		if(plan != null) {
+			return plan;
+		}
+		plan = beliefState.extendsBeliefState();
+		if(this.plans.size() < this.maxSize) {
+			Plans stored = this.plans.putIfAbsent(node, plan);
+			if(stored != null) {//un autre thread l'a etendu en meme temps : on garde le meme plan pour tout le monde
+				return stored;
+			}
+		}
+		return plan;
+	}
+
+	/**
+	 * move the root of the tree to the belief state observed after a move
+	 * @param beliefState the belief state observed after the move, once filtered
+	 * @param move the move played from the previous root
+	 * @return the child of the previous root equal to the observed belief state, whose subtree is kept, or the observed belief state itself (with an empty tree) if there is no such child
+	 */
+	public synchronized BeliefState reRoot(BeliefState beliefState, String move) {
+		BeliefState newRoot = null;
+		Plans plan = this.root == null ? null : this.plans.get(new Node(this.root));
+		if(plan != null && move != null) {
+			for(int i = 0; i < plan.size() && newRoot == null; i++) {
+				if(!plan.getAction(i).contains(move)) {
+					continue;
+				}
+				for(BeliefState child : plan.getResult(i).getBeliefStates()) {
+					if(child.equals(beliefState)) {
+						newRoot = child;
+						break;
+					}
+				}
+			}
+		}
+		if(newRoot == null) {
+			this.clear();
+			this.root = beliefState;
+			return beliefState;
+		}
+
+		//on ne garde que le sous-arbre de la nouvelle racine
+		ConcurrentHashMap<Node, Plans> kept = new ConcurrentHashMap<Node, Plans>();
+		ArrayDeque<BeliefState> toVisit = new ArrayDeque<BeliefState>();
+		toVisit.push(newRoot);
+		while(!toVisit.isEmpty()) {
+			Node node = new Node(toVisit.pop());
+			Plans statePlan = this.plans.get(node);
+			if(statePlan == null || kept.containsKey(node)) {
+				continue;
+			}
+			kept.put(node, statePlan);
+			for(int i = 0; i < statePlan.size(); i++) {
+				for(BeliefState child : statePlan.getResult(i).getBeliefStates()) {
+					toVisit.push(child);
+				}
+			}
+		}
+		this.plans = kept;
+		this.root = newRoot;
+		return newRoot;
+	}
+
+	/**
+	 * forget the whole tree
+	 */
+	public synchronized void clear() {
+		this.plans.clear();
+		this.root = null;
+	}
+
+	/**
+	 * return the number of extended belief states kept in the tree
+	 * @return the number of extended belief states kept in the tree
+	 */
+	public int size() {
+		return this.plans.size();
+	}
+}
@@ -0,0 +1,133 @@
+package logic;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * read a stream of snapshots written by a SnapshotWriter.
+ * The stream is read in place : the context and the records are slices of the given buffer (a file mapped in memory for example), nothing is copied before decoding.
+ * The records can be decoded one by one (next()) or only located (nextRecord()) and decoded later with decode().
+ */
+public class SnapshotReader {
+	private final ByteBuffer buffer;
+	private final MapContext context;
+
+	/**
+	 * open a stream of snapshots : its header is checked and the context of the level is decoded
+	 * @param buffer the stream, from its current position to its limit : its position is not modified
+	 * @throws IllegalArgumentException if the buffer does not start with a stream of snapshots of a known version
+	 */
+	public SnapshotReader(ByteBuffer buffer) {
+		this.buffer = buffer.slice();
+		if(this.buffer.remaining() < 4 || this.buffer.getInt() != SnapshotWriter.MAGIC)
+			throw new IllegalArgumentException("not a stream of snapshots");
+		int version = SnapshotReader.readVarint(this.buffer);
+		if(version != SnapshotWriter.VERSION)
+			throw new IllegalArgumentException("unknown version of snapshots : " + version);
+		this.context = MapContext.load(this.nextBlock());
+	}
+
+	/**
+	 * return the level of the belief states of the stream
+	 * @return the context decoded from the header of the stream
+	 */
+	public MapContext getContext() {
+		return this.context;
+	}
+
+	/**
+	 * tell whether there is another record to read
+	 * @return true if the stream is not finished
+	 */
+	public boolean hasNext() {
+		return this.buffer.hasRemaining();
+	}
+
+	/**
+	 * skip the next record without decoding it
+	 * @return the content of the record, a slice of the stream to be given to decode()
+	 */
+	public ByteBuffer nextRecord() {
+		return this.nextBlock();
+	}
+
+	/**
+	 * decode the next record
+	 * @return the belief states of the record, in the order in which they were written
+	 */
+	public ArrayList<BeliefState> next() {
+		return this.decode(this.nextBlock());
+	}
+
+	/**
+	 * decode a record returned by nextRecord()
+	 * @param record the content of the record : it is read from its current position, which is not modified
+	 * @return the belief states of the record, in the order in which they were written
+	 */
+	public ArrayList<BeliefState> decode(ByteBuffer record) {
+		ByteBuffer in = record.duplicate();
+		int nbrStates = SnapshotReader.readVarint(in);
+		ArrayList<BeliefState> states = new ArrayList<BeliefState>(nbrStates);
+		for(int i = 0; i < nbrStates; i++) {
+			states.add(new BeliefState(this.context, in));
+		}
+		return states;
+	}
+
+	/**
+	 * read a block prefixed by its length
+	 * @return a slice of the stream holding the content of the block
+	 */
+	private ByteBuffer nextBlock() {
+		int length = SnapshotReader.readVarint(this.buffer);
+		ByteBuffer block = this.buffer.slice();
+		block.limit(length);
+		this.buffer.position(this.buffer.position() + length);
+		return block;
+	}
+
+	/**
+	 * read a non-negative integer written by SnapshotWriter.writeVarint()
+	 * @param in the buffer to read
+	 * @return the integer
+	 */
+	static int readVarint(ByteBuffer in) {
+		int value = 0;
+		for(int shift = 0; ; shift += 7) {
+			byte b = in.get();
+			value |= (b & 0x7F) << shift;
+			if(b >= 0)
+				return value;
+		}
+	}
+
+	/**
+	 * read a group of bits of a sequence written by SnapshotWriter.writeBits()
+	 * @param in the buffer, positioned at the start of the sequence : its position is not modified
+	 * @param index index of the group in the sequence
+	 * @param nbr number of bits of each group, a divisor of 8
+	 * @return the bits of the group
+	 */
+	static int getBits(ByteBuffer in, int index, int nbr) {
+		int bit = index * nbr;
+		return (in.get(in.position() + bit / 8) >>> (bit % 8)) & ((1 << nbr) - 1);
+	}
+
+	/**
+	 * skip a sequence of bits written by SnapshotWriter.writeBits()
+	 * @param in the buffer, positioned at the start of the sequence
+	 * @param nbrBits number of bits of the sequence
+	 */
+	static void skipBits(ByteBuffer in, int nbrBits) {
+		in.position(in.position() + (nbrBits + 7) / 8);
+	}
+
+	/**
+	 * read an integer written by SnapshotWriter.writeSignedVarint()
+	 * @param in the buffer to read
+	 * @return the integer
+	 */
+	static int readSignedVarint(ByteBuffer in) {
+		int value = SnapshotReader.readVarint(in);
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
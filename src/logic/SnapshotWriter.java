@@ -0,0 +1,143 @@
+package logic;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * write a stream of snapshots of belief states in a compact binary format, to be read back by a SnapshotReader.
+ * A stream starts with a header (MAGIC then VERSION) followed by the context of the level, then holds any number of records :
+ * each record is a set of belief states of this level (the visible belief states of a tick, the leaves of a search...).
+ * The context and each record are prefixed by their length, so that a reader can slice or skip them without decoding them.
+ * Integers are written as varints (7 bits per byte, lowest bits first), signed ones after a zigzag encoding,
+ * and the content of the squares is packed on a few bits per square.
+ */
+public class SnapshotWriter {
+	/** First bytes of a stream : "PMBS" */
+	static final int MAGIC = 0x504D4253;
+	/** Version of the format, to be incremented at each incompatible change (including the seeds of the Zobrist keys) */
+	static final int VERSION = 1;
+
+	private final OutputStream out;
+	private final MapContext context;
+	private byte[] bytes = new byte[256];
+	private int size; //Nombre d'octets du bloc en cours d'ecriture
+	private int bitBuffer, nbrBits; //Bits en attente d'etre ecrits (voir writeBits())
+
+	/**
+	 * start a new stream of snapshots : the header and the context of the level are written immediately
+	 * @param out where to write the stream, it is not closed by the writer
+	 * @param context the level of all the belief states to be written
+	 * @throws IOException if the stream cannot be written
+	 */
+	public SnapshotWriter(OutputStream out, MapContext context) throws IOException {
+		this.out = out;
+		this.context = context;
+		this.out.write(new byte[] {(byte)(MAGIC >>> 24), (byte)(MAGIC >>> 16), (byte)(MAGIC >>> 8), (byte)MAGIC});
+		this.writeVarint(VERSION);
+		this.out.write(this.bytes, 0, this.size);
+		this.size = 0;
+		context.save(this);
+		this.writeBlock();
+	}
+
+	/**
+	 * write a record holding a single belief state
+	 * @param state a belief state of the level of the stream
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void write(BeliefState state) throws IOException {
+		this.write(Collections.singletonList(state));
+	}
+
+	/**
+	 * write a record holding a set of belief states
+	 * @param states belief states of the level of the stream
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void write(List<BeliefState> states) throws IOException {
+		this.writeVarint(states.size());
+		for(BeliefState state: states) {
+			if(state.getContext() != this.context)
+				throw new IllegalArgumentException("the belief state does not belong to the level of the stream");
+			state.save(this);
+		}
+		this.writeBlock();
+	}
+
+	/**
+	 * flush the underlying stream
+	 * @throws IOException if the stream cannot be written
+	 */
+	public void flush() throws IOException {
+		this.out.flush();
+	}
+
+	/**
+	 * write the current block prefixed by its length, and start a new one
+	 * @throws IOException if the stream cannot be written
+	 */
+	private void writeBlock() throws IOException {
+		int length = this.size;
+		this.writeVarint(length);
+		this.out.write(this.bytes, length, this.size - length);
+		this.out.write(this.bytes, 0, length);
+		this.size = 0;
+	}
+
+	/**
+	 * append a byte to the current block
+	 * @param b the byte
+	 */
+	private void writeByte(int b) {
+		if(this.size == this.bytes.length)
+			this.bytes = Arrays.copyOf(this.bytes, 2 * this.bytes.length);
+		this.bytes[this.size++] = (byte)b;
+	}
+
+	/**
+	 * append a non-negative integer, on 1 to 5 bytes
+	 * @param value the integer
+	 */
+	void writeVarint(int value) {
+		while((value & ~0x7F) != 0) {
+			this.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		this.writeByte(value);
+	}
+
+	/**
+	 * append an integer that may be negative : small absolute values take few bytes
+	 * @param value the integer
+	 */
+	void writeSignedVarint(int value) {
+		this.writeVarint((value << 1) ^ (value >> 31));
+	}
+
+	/**
+	 * append the lowest bits of a value, packed with the bits appended just before : call endBits() after the last ones
+	 * @param value the bits to append
+	 * @param nbr number of bits to append, at most 24
+	 */
+	void writeBits(int value, int nbr) {
+		this.bitBuffer |= (value & ((1 << nbr) - 1)) << this.nbrBits;
+		this.nbrBits += nbr;
+		while(this.nbrBits >= 8) {
+			this.writeByte(this.bitBuffer);
+			this.bitBuffer >>>= 8;
+			this.nbrBits -= 8;
+		}
+	}
+
+	/**
+	 * complete the last byte of bits with zeros
+	 */
+	void endBits() {
+		if(this.nbrBits > 0)
+			this.writeByte(this.bitBuffer);
+		this.bitBuffer = 0;
+		this.nbrBits = 0;
+	}
+}
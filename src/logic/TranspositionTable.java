@@ -0,0 +1,141 @@
+package logic;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * a transposition table storing the score of the belief states already evaluated by the AI.
+ * The belief states are indexed by their Zobrist key in a fixed-size array split into buckets of BUCKET_SIZE entries.
+ * No belief state is kept : a second 64-bit hash of the whole state (see BeliefState.getCheckKey()) is stored to check that two states sharing the same Zobrist key are really the same.
+ * Each entry records the depth of the search that computed its score and the generation (one per search) in which it was stored :
+ * when a bucket is full, the entry from the oldest search is replaced first, then the shallowest one.
+ * Entries stored before the last call to newLevel are considered as empty.
+ * The threads of the parallel search read and write the table without any lock : both keys of an entry are stored xored with its data,
+ * so that an entry being written by another thread is seen as a missing entry instead of a wrong score.
+ */
+class TranspositionTable {
+	/** Number of entries sharing the same index */
+	private static final int BUCKET_SIZE = 4;
+	/** Number of longs of an entry : key and check (both xored with the data), value, generation and depth */
+	private static final int ENTRY_LONGS = 4;
+	/** Memory used by one entry */
+	public static final int ENTRY_BYTES = 8 * ENTRY_LONGS;
+
+	private final long[] entries;
+	private volatile int generation;
+	private volatile int levelGeneration;
+	private final AtomicInteger maxDepth = new AtomicInteger();
+
+	/**
+	 * construct an empty table using at most a given amount of memory
+	 * @param maxBytes memory allowed for the table, in bytes
+	 */
+	public TranspositionTable(long maxBytes) {
+		int capacity = BUCKET_SIZE;
+		while(capacity <= Integer.MAX_VALUE / (2 * ENTRY_LONGS) && 2L * capacity * ENTRY_BYTES <= maxBytes) {
+			capacity *= 2;
+		}
+		this.entries = new long[capacity * ENTRY_LONGS];
+		this.generation = 1;
+		this.levelGeneration = 1;
+	}
+
+	/**
+	 * start a new search : the entries stored until now become older than the next ones
+	 */
+	public synchronized void newSearch() {
+		this.generation++;
+	}
+
+	/**
+	 * start a new level : all the entries stored until now are evicted
+	 */
+	public synchronized void newLevel() {
+		this.generation++;
+		this.levelGeneration = this.generation;
+		this.maxDepth.set(0);
+	}
+
+	/**
+	 * return the score stored for a belief state, if it was computed by a search at least as deep as requested
+	 * @param beliefState the belief state to look for
+	 * @param depth the minimal depth of the search that computed the score
+	 * @return the score of the belief state, or Double.NaN if there is no such score in the table
+	 */
+	public double get(BeliefState beliefState, int depth) {
+		long key = beliefState.getZobristKey();
+		long check = beliefState.getCheckKey();
+		int levelGeneration = this.levelGeneration;
+		int bucket = this.bucket(key);
+		for(int index = bucket; index < bucket + BUCKET_SIZE * ENTRY_LONGS; index += ENTRY_LONGS) {
+			long value = this.entries[index + 2];
+			long data = this.entries[index + 3];
+			if((this.entries[index] ^ value ^ data) == key && (this.entries[index + 1] ^ value ^ data) == check && (int)(data >>> 8) >= levelGeneration) {
+				return (int)(data & 0xFF) >= depth ? Double.longBitsToDouble(value) : Double.NaN;
+			}
+		}
+		return Double.NaN;
+	}
+
+	/**
+	 * store the score of a belief state
+	 * @param beliefState the belief state
+	 * @param depth the depth of the search that computed the score
+	 * @param value the score of the belief state
+	 */
+	public void put(BeliefState beliefState, int depth, double value) {
+		long key = beliefState.getZobristKey();
+		long check = beliefState.getCheckKey();
+		int generation = this.generation;
+		int levelGeneration = this.levelGeneration;
+		int bucket = this.bucket(key);
+		int victim = bucket;
+		int victimGeneration = Integer.MAX_VALUE, victimDepth = Integer.MAX_VALUE;
+		for(int index = bucket; index < bucket + BUCKET_SIZE * ENTRY_LONGS; index += ENTRY_LONGS) {
+			long oldValue = this.entries[index + 2];
+			long oldData = this.entries[index + 3];
+			int oldGeneration = (int)(oldData >>> 8);
+			int oldDepth = (int)(oldData & 0xFF);
+			if(oldGeneration < levelGeneration) {//entree vide ou d'un niveau precedent
+				victim = index;
+				break;
+			}
+			if((this.entries[index] ^ oldValue ^ oldData) == key && (this.entries[index + 1] ^ oldValue ^ oldData) == check) {//deja present : on ne remplace un score que par un score au moins aussi profond
+				if(depth < oldDepth) {
+					return;
+				}
+				victim = index;
+				break;
+			}
+			if(oldGeneration < victimGeneration || (oldGeneration == victimGeneration && oldDepth < victimDepth)) {
+				victim = index;
+				victimGeneration = oldGeneration;
+				victimDepth = oldDepth;
+			}
+		}
+		long bits = Double.doubleToRawLongBits(value);
+		long data = ((long)generation << 8) | Math.min(depth, 0xFF);
+		this.entries[victim] = key ^ bits ^ data;
+		this.entries[victim + 1] = check ^ bits ^ data;
+		this.entries[victim + 2] = bits;
+		this.entries[victim + 3] = data;
+		if(depth > this.maxDepth.get()) {
+			this.maxDepth.accumulateAndGet(depth, Math::max);
+		}
+	}
+
+	/**
+	 * return the depth of the deepest search whose score was stored since the beginning of the level
+	 * @return the maximal depth of the stored scores
+	 */
+	public int getMaxDepth() {
+		return this.maxDepth.get();
+	}
+
+	/**
+	 * return the index in the array of the first entry of the bucket of a key
+	 * @param key Zobrist key of a belief state
+	 * @return the index of the first long of the bucket
+	 */
+	private int bucket(long key) {
+		return ((int)(key ^ (key >>> 32)) & (this.entries.length / ENTRY_LONGS - BUCKET_SIZE)) * ENTRY_LONGS;
+	}
+}
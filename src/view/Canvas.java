@@ -25,6 +25,7 @@ public class Canvas
 	// shape objects in this project clean and simple for educational purposes.
 
 	private static Canvas canvasSingleton;
+	private static boolean headless;
 
 	/**
 	 * Factory method to get the canvas singleton object.
@@ -32,7 +33,7 @@ public class Canvas
 	public static Canvas getCanvas()
 	{
 		if(canvasSingleton == null) {
-			canvasSingleton = new Canvas("Pac-Man", WIDTH, HEIGHT,
+			canvasSingleton = headless ? new Canvas() : new Canvas("Pac-Man", WIDTH, HEIGHT,
 					Color.white);
 		}
 		canvasSingleton.setVisible(true);
@@ -90,6 +91,25 @@ public class Canvas
 		canvas.setFocusable(true);
 	}
 
+	/**
+	 * Create a headless Canvas : no window is created, nothing is drawn,
+	 * and the game is driven by the AI.
+	 */
+	private Canvas()
+	{
+		this.isAIdriven = true;
+	}
+
+	/**
+	 * Select the headless mode, before the first call to getCanvas() : the
+	 * game runs without any window and without waiting between two frames.
+	 * @param isHeadless true to run without any window
+	 */
+	public static void setHeadless(boolean isHeadless)
+	{
+		headless = isHeadless;
+	}
+
 	public void manualPressed(ActionEvent e) {
 		this.isAIdriven = false;
 	}
@@ -153,6 +173,9 @@ public class Canvas
 	 */
 	public void printString(String text, int x, int y)
 	{
+		if(frame == null) {
+			return;    // headless canvas
+		}
 		graphic.setFont(new Font("Arial", Font.BOLD, 20));
 		graphic.setColor(Color.WHITE);
 		graphic.drawString(text, x, y);
@@ -168,6 +191,9 @@ public class Canvas
 	 */
 	public void setVisible(boolean visible)
 	{
+		if(frame == null) {
+			return;    // headless canvas
+		}
 		if(graphic == null) {
 			// first time: instantiate the offscreen image and fill it with
 			// the background color
@@ -192,6 +218,9 @@ public class Canvas
 	// in this project clean and simple for educational purposes.
 	public void draw(Object referenceObject, String color, Shape shape)
 	{
+		if(frame == null) {
+			return;    // headless canvas
+		}
 		objects.remove(referenceObject);   // just in case it was already there
 		objects.add(referenceObject);      // add at the end
 		shapes.put(referenceObject, new ShapeDescription(shape, color));
@@ -204,6 +233,9 @@ public class Canvas
 	 */
 	public void erase(Object referenceObject)
 	{
+		if(frame == null) {
+			return;    // headless canvas
+		}
 		objects.remove(referenceObject);   // just in case it was already there
 		shapes.remove(referenceObject);
 		//         redraw();
@@ -279,6 +311,9 @@ public class Canvas
 	 */
 	public void redraw(int score, int life, String meilleurScore)
 	{
+		if(frame == null) {
+			return;    // headless canvas : nothing to draw, no need to wait
+		}
 		erase();
 		for(Object shape : objects) {
 			shapes.get(shape).draw(graphic);